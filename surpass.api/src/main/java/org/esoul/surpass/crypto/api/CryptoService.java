@@ -21,6 +21,13 @@
 */
 package org.esoul.surpass.crypto.api;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
 
 /**
@@ -50,6 +57,83 @@ public interface CryptoService {
      */
     byte[] decrypt(char[] key, byte[] cipherInput) throws GeneralSecurityException;
 
+    /**
+     * Encrypts the remaining bytes of a buffer. The buffer is consumed.
+     *
+     * @param key The key used for encryption.
+     * @param data The data for encryption.
+     * @return A buffer with the cipher text + salt, iv and format version between its position and limit.
+     * @throws GeneralSecurityException
+     */
+    default ByteBuffer encrypt(char[] key, ByteBuffer data) throws GeneralSecurityException {
+        byte[] array = new byte[data.remaining()];
+        data.get(array);
+        return ByteBuffer.wrap(encrypt(key, array));
+    }
+
+    /**
+     * Decrypts the remaining bytes of a buffer. The buffer is consumed.
+     *
+     * @param key The key used for decryption.
+     * @param cipherInput The cipher text + salt, iv and format version.
+     * @return A buffer with the decrypted data between its position and limit.
+     * @throws GeneralSecurityException
+     */
+    default ByteBuffer decrypt(char[] key, ByteBuffer cipherInput) throws GeneralSecurityException {
+        byte[] array = new byte[cipherInput.remaining()];
+        cipherInput.get(array);
+        return ByteBuffer.wrap(decrypt(key, array));
+    }
+
+    /**
+     * Decrypts a range of the data. Formats which encrypt the data in independent parts can decrypt only the parts which hold the range, the default decrypts
+     * the whole data.
+     *
+     * @param key The key used for decryption.
+     * @param cipherInput The cipher text + salt, iv and format version between the position and the limit of the buffer, which are not changed.
+     * @param offset The offset of the range in the decrypted data.
+     * @param length The length of the range.
+     * @return A buffer with the range of the decrypted data between its position and limit.
+     * @throws GeneralSecurityException
+     */
+    default ByteBuffer decrypt(char[] key, ByteBuffer cipherInput, long offset, int length) throws GeneralSecurityException {
+        ByteBuffer data = decrypt(key, cipherInput.duplicate());
+        if (offset < 0 || length < 0 || offset + length > data.remaining()) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is out of " + data.remaining());
+        }
+        return data.slice(data.position() + (int) offset, length);
+    }
+
+    /**
+     * Encrypts everything read from a channel until its end and writes the result to another channel. Neither channel is closed.
+     *
+     * @param key The key used for encryption.
+     * @param source The data for encryption.
+     * @param target Receives the cipher text + salt, iv and format version.
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    default void encrypt(char[] key, ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        InputStream input = Channels.newInputStream(source);
+        OutputStream output = Channels.newOutputStream(target);
+        output.write(encrypt(key, input.readAllBytes()));
+    }
+
+    /**
+     * Decrypts everything read from a channel until its end and writes the result to another channel. Neither channel is closed.
+     *
+     * @param key The key used for decryption.
+     * @param source The cipher text + salt, iv and format version.
+     * @param target Receives the decrypted data.
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    default void decrypt(char[] key, ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        InputStream input = Channels.newInputStream(source);
+        OutputStream output = Channels.newOutputStream(target);
+        output.write(decrypt(key, input.readAllBytes()));
+    }
+
     /**
      * Calculate the SHA-512 digest (a.k.a. the SHA-512 hash) of the given input.
      * 
@@ -58,4 +142,49 @@ public interface CryptoService {
      * @throws GeneralSecurityException
      */
     char[] digest(char[] input) throws GeneralSecurityException;
+
+    /**
+     * Changes the key of encrypted data. Formats which encrypt the data with a data key can only re-encrypt that key, the default decrypts and encrypts the
+     * whole data.
+     *
+     * @param currentKey The key the data is encrypted with.
+     * @param newKey The new key.
+     * @param cipherInput The cipher text + salt, iv and format version.
+     * @return The cipher input for the new key.
+     * @throws GeneralSecurityException
+     */
+    default byte[] changeKey(char[] currentKey, char[] newKey, byte[] cipherInput) throws GeneralSecurityException {
+        return encrypt(newKey, decrypt(currentKey, cipherInput));
+    }
+
+    /**
+     * Returns a record which lets {@link #verifyKey(char[], byte[])} check a key without the whole cipher input, e.g. to validate a password before
+     * overwriting data encrypted with it.
+     *
+     * @param cipherInput The cipher text + salt, iv and format version.
+     * @return The key verifier or {@code null} if the format of the cipher input has none.
+     */
+    default byte[] getKeyVerifier(byte[] cipherInput) {
+        return null;
+    }
+
+    /**
+     * Checks whether a key is the one the cipher input of a key verifier was encrypted with. It is only called with a non-null key verifier returned by
+     * {@link #getKeyVerifier(byte[])}. The default matches no key, implementations which return key verifiers override both methods.
+     *
+     * @param key The key to check.
+     * @param keyVerifier A key verifier returned by {@link #getKeyVerifier(byte[])}.
+     * @return Whether the key matches.
+     * @throws GeneralSecurityException
+     */
+    default boolean verifyKey(char[] key, byte[] keyVerifier) throws GeneralSecurityException {
+        return false;
+    }
+
+    /**
+     * Forgets and destroys any keys this service has derived and kept for reuse. Services which keep no keys do nothing.
+     */
+    default void clearKeys() {
+        // do nothing
+    }
 }
@@ -0,0 +1,49 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.table.api;
+
+/**
+ * A single change of a {@link SecretTable} as part of a batch. See {@link SecretTable#applyBatch(java.util.List)}. The row indices refer to the state of the
+ * table after the preceding mutations of the batch were applied.
+ *
+ * @author mgp
+ */
+public sealed interface RowMutation {
+
+    /**
+     * See {@link SecretTable#createRow(char[], char[], char[])}.
+     */
+    record Create(char[] secret, char[] identifier, char[] note) implements RowMutation {
+    }
+
+    /**
+     * See {@link SecretTable#updateRow(int, char[], char[], char[])}.
+     */
+    record Update(int row, char[] secret, char[] identifier, char[] note) implements RowMutation {
+    }
+
+    /**
+     * See {@link SecretTable#removeRow(int)}.
+     */
+    record Remove(int row) implements RowMutation {
+    }
+}
@@ -0,0 +1,87 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.table.api;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Splits a range of rows of a {@link SecretTableSnapshot} in halves, so the rows can be processed in parallel. A snapshot is immutable, so the halves need no
+ * coordination. An optional filter is applied before a row is passed on, so rows which do not match never reach the stream pipeline.
+ *
+ * @author mgp
+ */
+final class RowSpliterator implements Spliterator<RowView> {
+
+    private final SecretTableSnapshot snapshot;
+
+    private final Predicate<? super RowView> filter;
+
+    private int row;
+
+    private final int endRow;
+
+    RowSpliterator(SecretTableSnapshot snapshot, Predicate<? super RowView> filter, int row, int endRow) {
+        this.snapshot = snapshot;
+        this.filter = filter;
+        this.row = row;
+        this.endRow = endRow;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RowView> action) {
+        while (row < endRow) {
+            RowView rowView = new RowView(snapshot, row++);
+            if (null == filter || filter.test(rowView)) {
+                action.accept(rowView);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<RowView> trySplit() {
+        int middleRow = (row + endRow) >>> 1;
+        if (middleRow <= row) {
+            return null;
+        }
+        RowSpliterator prefix = new RowSpliterator(snapshot, filter, row, middleRow);
+        row = middleRow;
+        return prefix;
+    }
+
+    /**
+     * The exact number of remaining rows without a filter, otherwise an upper bound.
+     */
+    @Override
+    public long estimateSize() {
+        return endRow - row;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = ORDERED | IMMUTABLE | NONNULL;
+        return null == filter ? characteristics | SIZED | SUBSIZED : characteristics;
+    }
+}
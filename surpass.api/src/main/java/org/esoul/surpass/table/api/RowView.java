@@ -0,0 +1,43 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.table.api;
+
+/**
+ * A row of a {@link SecretTableSnapshot} as an element of a stream. See {@link SecretTableSnapshot#rows()}. The view holds only the row index, the cells
+ * are read from the snapshot on demand, so streaming the rows does not copy them.
+ *
+ * @author mgp
+ */
+public record RowView(SecretTableSnapshot snapshot, int row) {
+
+    public byte[] readSecret() {
+        return snapshot.readSecret(row);
+    }
+
+    public byte[] readIdentifier() {
+        return snapshot.readIdentifier(row);
+    }
+
+    public byte[] readNote() {
+        return snapshot.readNote(row);
+    }
+}
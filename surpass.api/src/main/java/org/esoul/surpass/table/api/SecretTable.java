@@ -21,6 +21,13 @@
 */
 package org.esoul.surpass.table.api;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
 public interface SecretTable {
 
     /**
@@ -53,6 +60,17 @@ public interface SecretTable {
      */
     void removeRow(int row);
 
+    /**
+     * Applies a batch of mutations atomically. All input is encoded and validated before the table is modified, so either all mutations are applied or none.
+     * All input is cleared immediately.
+     * 
+     * @param mutations The mutations to apply in order.
+     * @throws MaxSizeExceededException In case the maximum size of any of the input or the maximum number of rows is exceeded.
+     * @throws EmptySequenceException
+     * @throws IllegalArgumentException In case a mutation refers to a nonexistent row.
+     */
+    void applyBatch(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException;
+
     /**
      * Returns the number of allocated/used rows.
      * 
@@ -73,6 +91,125 @@ public interface SecretTable {
 
     byte[] readNote(int row);
 
+    /**
+     * Finds the rows with a given identifier. The identifiers are indexed, so the lookup takes constant time regardless of the number of rows. Only exact
+     * matches are found.
+     * 
+     * @param identifier The UTF-8 encoded identifier to look for.
+     * @return The matching rows in ascending order. Empty if there are none.
+     */
+    int[] findRowsByIdentifier(byte[] identifier);
+
+    /**
+     * Copies the secret of a given row to a buffer starting at its current position and advances the position. Unlike {@link #readSecret(int)} the
+     * implementations in this project allocate nothing, so a single buffer can be reused to scan the whole table.
+     * 
+     * @param row The row to read.
+     * @param dst The destination buffer.
+     * @return The number of copied bytes.
+     * @throws BufferOverflowException If the remaining space in the buffer is not enough. The content of the buffer is not modified in this case.
+     */
+    default int readSecretInto(int row, ByteBuffer dst) {
+        byte[] secret = readSecret(row);
+        try {
+            dst.put(secret);
+            return secret.length;
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Copies the identifier of a given row to a buffer. See {@link #readSecretInto(int, ByteBuffer)}.
+     * 
+     * @param row The row to read.
+     * @param dst The destination buffer.
+     * @return The number of copied bytes.
+     * @throws BufferOverflowException If the remaining space in the buffer is not enough.
+     */
+    default int readIdentifierInto(int row, ByteBuffer dst) {
+        byte[] identifier = readIdentifier(row);
+        dst.put(identifier);
+        return identifier.length;
+    }
+
+    /**
+     * Copies the note of a given row to a buffer. See {@link #readSecretInto(int, ByteBuffer)}.
+     * 
+     * @param row The row to read.
+     * @param dst The destination buffer.
+     * @return The number of copied bytes.
+     * @throws BufferOverflowException If the remaining space in the buffer is not enough.
+     */
+    default int readNoteInto(int row, ByteBuffer dst) {
+        byte[] note = readNote(row);
+        dst.put(note);
+        return note.length;
+    }
+
+    /**
+     * Returns the length of the secret of a given row in bytes without copying the secret.
+     * 
+     * @param row The row to read.
+     * @return The length of the secret.
+     */
+    default int getSecretLength(int row) {
+        byte[] secret = readSecret(row);
+        Arrays.fill(secret, (byte) 0);
+        return secret.length;
+    }
+
+    /**
+     * Returns the length of the identifier of a given row in bytes.
+     * 
+     * @param row The row to read.
+     * @return The length of the identifier.
+     */
+    default int getIdentifierLength(int row) {
+        return readIdentifier(row).length;
+    }
+
+    /**
+     * Returns the length of the note of a given row in bytes.
+     * 
+     * @param row The row to read.
+     * @return The length of the note.
+     */
+    default int getNoteLength(int row) {
+        return readNote(row).length;
+    }
+
+    /**
+     * Takes an immutable point-in-time view of this table. Taking the snapshot is cheap, the rows are copied lazily, i.e. only when the table is modified
+     * afterwards. Use it for long running reads, like serialization, which should not block writers.
+     * 
+     * @return A snapshot of the current state of this table.
+     */
+    SecretTableSnapshot snapshot();
+
+    /**
+     * Returns a stream of the rows of a snapshot taken now. See {@link SecretTableSnapshot#rows()}. Closing the stream closes the snapshot, so use the stream
+     * in a try-with-resources statement.
+     * 
+     * @return A stream of the rows.
+     */
+    default Stream<RowView> rows() {
+        SecretTableSnapshot snapshot = snapshot();
+        return snapshot.rows().onClose(snapshot::close);
+    }
+
+    /**
+     * Returns a stream of the rows of a snapshot taken now. See {@link SecretTableSnapshot#rows(Predicate)}. Closing the stream closes the snapshot, so use
+     * the stream in a try-with-resources statement.
+     * 
+     * @param filter The filter of the rows.
+     * @return A stream of the matching rows.
+     */
+    default Stream<RowView> rows(Predicate<? super RowView> filter) {
+        SecretTableSnapshot snapshot = snapshot();
+        return snapshot.rows(filter).onClose(snapshot::close);
+    }
+
     /**
      * Converts the table to a one dimensional array.
      *
@@ -86,4 +223,10 @@ public interface SecretTable {
      * @param sequence A one dimensional array.
      */
     void load(byte[] sequence);
+
+    /**
+     * Wipes the content of this table and releases any resources held by it. The table should not be used afterwards.
+     */
+    default void close() {
+    }
 }
@@ -0,0 +1,83 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.table.api;
+
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable point-in-time view of a {@link SecretTable}. Changes made to the table after the snapshot was taken are not visible through the snapshot, and
+ * reading the snapshot does not block writers of the table.
+ *
+ * @author mgp
+ */
+public interface SecretTableSnapshot extends AutoCloseable {
+
+    /**
+     * Returns the number of used rows at the time the snapshot was taken.
+     * 
+     * @return The number of used rows.
+     */
+    int getRowNumber();
+
+    byte[] readSecret(int row);
+
+    byte[] readIdentifier(int row);
+
+    byte[] readNote(int row);
+
+    /**
+     * Returns a stream of the rows of this snapshot in order. The rows are read on demand and the stream can be processed in {@link Stream#parallel()}, since
+     * the snapshot does not change. The snapshot must stay open while the stream is processed.
+     * 
+     * @return A stream of the rows.
+     */
+    default Stream<RowView> rows() {
+        return StreamSupport.stream(new RowSpliterator(this, null, 0, getRowNumber()), false);
+    }
+
+    /**
+     * Same as {@link #rows()}, but only the rows which match a filter are passed on. The filter is applied while the rows are split, before anything else in
+     * the pipeline. It may be called concurrently if the stream is parallel.
+     * 
+     * @param filter The filter of the rows.
+     * @return A stream of the matching rows.
+     */
+    default Stream<RowView> rows(Predicate<? super RowView> filter) {
+        return StreamSupport.stream(new RowSpliterator(this, filter, 0, getRowNumber()), false);
+    }
+
+    /**
+     * Converts the snapshot to a one dimensional array. See {@link SecretTable#toOneDimension()}.
+     *
+     * @return A one dimensional array.
+     */
+    byte[] toOneDimension();
+
+    /**
+     * Releases any resources held by this snapshot.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -1,11 +1,16 @@
 package org.esoul.surpass.app.test;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.esoul.surpass.app.SecretQuery;
 import org.esoul.surpass.app.Session;
 import org.esoul.surpass.app.SessionFactory;
+import org.esoul.surpass.table.api.RowView;
 import org.esoul.surpass.test.Fs;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -54,5 +59,183 @@ public class SecretQueryTest {
         Assertions.assertEquals(2, uniqueIdentifiers.size());
         Assertions.assertEquals("secondary", uniqueIdentifiers.get(0));
         Assertions.assertEquals("main", uniqueIdentifiers.get(1));
+
+        Assertions.assertEquals(List.of("secondary"), secretQuery.getUniqueIdentifiers(1));
+        Assertions.assertEquals(List.of(), secretQuery.getUniqueIdentifiers(0));
+
+        // Remove a secondary and move another one to main.
+        session.remove(2);
+        session.setEditMode(2);
+        session.write(new char[0], "main".toCharArray(), "note2".toCharArray());
+        Assertions.assertEquals(List.of("main", "secondary"), secretQuery.getUniqueIdentifiers());
+        Assertions.assertEquals(List.of("main"), secretQuery.getUniqueIdentifiers(1));
+    }
+
+    @Test
+    public void testFindRowsByIdentifier(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        SecretQuery secretQuery = session.createQuery();
+        Assertions.assertEquals(0, secretQuery.findRowsByIdentifier("main").length);
+
+        session.write("pass1".toCharArray(), "main".toCharArray(), "note1".toCharArray());
+        session.write("pass2".toCharArray(), "secondary".toCharArray(), "note2".toCharArray());
+        session.write("pass3".toCharArray(), "main".toCharArray(), "note3".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0, 2 }, secretQuery.findRowsByIdentifier("main"));
+
+        session.remove(0);
+        Assertions.assertArrayEquals(new int[] { 1 }, secretQuery.findRowsByIdentifier("main"));
+        Assertions.assertArrayEquals(new int[] { 0 }, secretQuery.findRowsByIdentifier("secondary"));
+    }
+
+    @Test
+    public void testFindRowsContaining(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        SecretQuery secretQuery = session.createQuery();
+        IntPredicate containsMail = secretQuery.containing("MAIL");
+        Assertions.assertFalse(containsMail.test(0));
+
+        session.write("pass1".toCharArray(), "john@example.com".toCharArray(), "E-Mail account".toCharArray());
+        session.write("pass2".toCharArray(), "john".toCharArray(), "bank".toCharArray());
+        session.write("pass3".toCharArray(), "jane".toCharArray(), "gmail".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0, 2 }, secretQuery.findRowsContaining("MAIL"));
+        Assertions.assertArrayEquals(new int[] { 0, 1 }, secretQuery.findRowsContaining("joh"));
+        Assertions.assertArrayEquals(new int[] { 0, 1, 2 }, secretQuery.findRowsContaining("j"));
+        Assertions.assertArrayEquals(new int[] { 0 }, secretQuery.findRowsContaining("e.com"));
+        Assertions.assertEquals(0, secretQuery.findRowsContaining("liam").length);
+        // A match cannot span the identifier and the note.
+        Assertions.assertEquals(0, secretQuery.findRowsContaining("johnbank").length);
+        Assertions.assertTrue(containsMail.test(2));
+        Assertions.assertFalse(containsMail.test(1));
+
+        session.remove(0);
+        session.setEditMode(0);
+        session.write(new char[0], "john".toCharArray(), "hotmail".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0, 1 }, secretQuery.findRowsContaining("mail"));
+        Assertions.assertTrue(containsMail.test(0));
+        Assertions.assertArrayEquals(new int[] { 1 }, secretQuery.findRowsContaining("jane"));
+    }
+
+    @Test
+    public void testFindRowsContainingWithManyRemovals(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            String note = 0 == i % 3 ? "gmail" : "bank";
+            session.write("pass".toCharArray(), ("acct" + i).toCharArray(), note.toCharArray());
+            texts.add("acct" + i + " " + note);
+        }
+        SecretQuery secretQuery = session.createQuery();
+        // Removals leave the slots of the removed rows behind until they outnumber the rows, updates keep the slot of the row.
+        for (int i = 0; i < 50; i++) {
+            int row = (i * 7) % texts.size();
+            if (0 == i % 5) {
+                session.setEditMode(row);
+                session.write(new char[0], ("acct" + i).toCharArray(), "hotmail".toCharArray());
+                texts.set(row, "acct" + i + " hotmail");
+            } else {
+                session.remove(row);
+                texts.remove(row);
+            }
+            for (String query : List.of("mail", "bank", "acct1", "ba")) {
+                int[] expected = IntStream.range(0, texts.size()).filter(r -> texts.get(r).contains(query)).toArray();
+                Assertions.assertArrayEquals(expected, secretQuery.findRowsContaining(query), query);
+            }
+        }
+    }
+
+    @Test
+    public void testCompleteIdentifier(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        SecretQuery secretQuery = session.createQuery();
+        Assertions.assertEquals(List.of(), secretQuery.completeIdentifier("", 5));
+
+        session.write("pass1".toCharArray(), "john@example.com".toCharArray(), "note1".toCharArray());
+        session.write("pass2".toCharArray(), "John".toCharArray(), "note2".toCharArray());
+        session.write("pass3".toCharArray(), "John".toCharArray(), "note3".toCharArray());
+        session.write("pass4".toCharArray(), "jane".toCharArray(), "note4".toCharArray());
+        Assertions.assertEquals(List.of("John", "jane", "john@example.com"), secretQuery.completeIdentifier("j", 5));
+        Assertions.assertEquals(List.of("John", "john@example.com"), secretQuery.completeIdentifier("JOH", 5));
+        Assertions.assertEquals(List.of("John"), secretQuery.completeIdentifier("", 1));
+        Assertions.assertEquals(List.of(), secretQuery.completeIdentifier("x", 5));
+        Assertions.assertEquals(secretQuery.getUniqueIdentifiers(5), secretQuery.completeIdentifier("", 5));
+
+        session.remove(1);
+        session.setEditMode(1);
+        session.write(new char[0], "jane".toCharArray(), "note3".toCharArray());
+        Assertions.assertEquals(List.of("jane", "john@example.com"), secretQuery.completeIdentifier("j", 5));
+        Assertions.assertEquals(secretQuery.getUniqueIdentifiers(5), secretQuery.completeIdentifier("", 5));
+        session.remove(0);
+        Assertions.assertEquals(List.of(), secretQuery.completeIdentifier("john", 5));
+        Assertions.assertEquals(secretQuery.getUniqueIdentifiers(5), secretQuery.completeIdentifier("", 5));
+    }
+
+    @Test
+    public void testFindRowsFuzzy(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        session.write("pass1".toCharArray(), "john.doe@example.com".toCharArray(), "gmail".toCharArray());
+        session.write("pass2".toCharArray(), "admin".toCharArray(), "router.home.lan".toCharArray());
+        session.write("pass3".toCharArray(), "jdoe".toCharArray(), "work".toCharArray());
+        session.write("pass4".toCharArray(), "root".toCharArray(), "server".toCharArray());
+
+        SecretQuery secretQuery = session.createQuery();
+        // Exact matches come first, then the ones with typos.
+        Assertions.assertArrayEquals(new int[] { 0 }, secretQuery.findRowsFuzzy("GMAIL"));
+        Assertions.assertArrayEquals(new int[] { 0 }, secretQuery.findRowsFuzzy("gmial"));
+        Assertions.assertArrayEquals(new int[] { 1 }, secretQuery.findRowsFuzzy("ruoter"));
+        Assertions.assertArrayEquals(new int[] { 2, 0 }, secretQuery.findRowsFuzzy("jdoe"));
+        // The characters in order match as well, after the matches within the edit distance.
+        Assertions.assertArrayEquals(new int[] { 1 }, secretQuery.findRowsFuzzy("rthmln"));
+        Assertions.assertEquals(0, secretQuery.findRowsFuzzy("xyzzy").length);
+        Assertions.assertEquals(4, secretQuery.findRowsFuzzy("").length);
+
+        // Characters in order scattered over a long text are a coincidence, and short texts are found in order in almost any row.
+        session.write("pass5".toCharArray(), "museum".toCharArray(), "go to the museum and see paintings in italy later".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0 }, secretQuery.findRowsFuzzy("gmail"));
+        Assertions.assertArrayEquals(new int[] { 1 }, secretQuery.findRowsFuzzy("rthmln"));
+        Assertions.assertEquals(0, secretQuery.findRowsFuzzy("rl").length);
+
+        IntPredicate matchesRouter = secretQuery.approximatelyContaining("ruoter");
+        Assertions.assertTrue(matchesRouter.test(1));
+        Assertions.assertFalse(matchesRouter.test(3));
+    }
+
+    @Test
+    public void testRows(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = SessionFactory.create();
+        session.start();
+
+        for (int i = 0; i < 100; i++) {
+            session.write(("pass" + i % 10).toCharArray(), ("id" + i).toCharArray(), ("note" + i).toCharArray());
+        }
+        SecretQuery secretQuery = session.createQuery();
+        try (Stream<RowView> rows = secretQuery.rows(rowView -> rowView.readIdentifier().length > 3)) {
+            // Rows written while streaming are not seen, the stream reads a snapshot.
+            session.write("pass".toCharArray(), "id100".toCharArray(), "note".toCharArray());
+            Assertions.assertEquals(90, rows.parallel().count());
+        }
+        try (Stream<RowView> rows = secretQuery.rows(_ -> true)) {
+            Assertions.assertEquals(List.of(0, 1, 2), rows.parallel().map(RowView::row).limit(3).toList());
+        }
+
+        List<int[]> groups = secretQuery.findRowsWithSameSecret();
+        Assertions.assertEquals(10, groups.size());
+        Assertions.assertArrayEquals(new int[] { 0, 10, 20, 30, 40, 50, 60, 70, 80, 90 }, groups.get(0));
+        Assertions.assertArrayEquals(new int[] { 9, 19, 29, 39, 49, 59, 69, 79, 89, 99 }, groups.get(9));
     }
 }
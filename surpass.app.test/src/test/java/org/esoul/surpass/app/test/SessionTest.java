@@ -6,17 +6,24 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.esoul.surpass.app.ExistingDataNotLoadedException;
 import org.esoul.surpass.app.InvalidPasswordException;
+import org.esoul.surpass.app.RowChangeEvent;
+import org.esoul.surpass.app.RowChangeListener;
 import org.esoul.surpass.app.ServiceUnavailableException;
 import org.esoul.surpass.app.Session;
 import org.esoul.surpass.app.SessionFactory;
 import org.esoul.surpass.persist.api.PersistenceDefaults;
 import org.esoul.surpass.table.api.EmptySequenceException;
 import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
 import org.esoul.surpass.table.api.SecretTable;
 import org.esoul.surpass.test.Fs;
 import org.junit.jupiter.api.AfterEach;
@@ -44,6 +51,51 @@ public class SessionTest {
         Assertions.assertArrayEquals("pass2".getBytes(UTF_8), session.getSecretTable().readSecret(0));
     }
 
+    @Test
+    public void testSecretTableProvider(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        // The default keeps the format of existing data files, the paged table is opt-in.
+        Session session = SessionFactory.create();
+        session.start();
+        Assertions.assertEquals("org.esoul.surpass.core.SquareMatrix", session.getSecretTable().getClass().getName());
+        System.setProperty(SecretTable.class.getName(), "org.esoul.surpass.core.PagedSecretTable");
+        try {
+            Session pagedSession = SessionFactory.create();
+            pagedSession.start();
+            Assertions.assertEquals("org.esoul.surpass.core.PagedSecretTable", pagedSession.getSecretTable().getClass().getName());
+        } finally {
+            System.clearProperty(SecretTable.class.getName());
+        }
+    }
+
+    @Test
+    public void testEditModeFollowsRemovals(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = createSessionWithSecret1();
+        session.write("pass2".toCharArray(), "id2".toCharArray(), "note2".toCharArray());
+        session.write("pass3".toCharArray(), "id3".toCharArray(), "note3".toCharArray());
+        SecretTable secretTable = session.getSecretTable();
+
+        session.setEditMode(2);
+        session.remove(0);
+        session.write(new char[0], "id3-upd".toCharArray(), "note3".toCharArray());
+        Assertions.assertEquals(2, secretTable.getRowNumber());
+        Assertions.assertArrayEquals("id3-upd".getBytes(UTF_8), secretTable.readIdentifier(1));
+
+        session.setEditMode(1);
+        session.writeBatch(List.of(new RowMutation.Remove(0)));
+        session.write(new char[0], "id3-upd2".toCharArray(), "note3".toCharArray());
+        Assertions.assertEquals(1, secretTable.getRowNumber());
+        Assertions.assertArrayEquals("id3-upd2".getBytes(UTF_8), secretTable.readIdentifier(0));
+
+        // Removing the edited row ends edit mode, so the next write adds a row.
+        session.setEditMode(0);
+        session.remove(0);
+        session.write("pass4".toCharArray(), "id4".toCharArray(), "note4".toCharArray());
+        Assertions.assertEquals(1, secretTable.getRowNumber());
+        Assertions.assertArrayEquals("id4".getBytes(UTF_8), secretTable.readIdentifier(0));
+    }
+
     @Test
     public void testLoad(@TempDir Path tmp) throws Exception {
         testStore(tmp);
@@ -92,6 +144,68 @@ public class SessionTest {
                 Collections.singletonList("org.esoul.surpass.persist.LocalFileSystemPersistenceService")));
     }
 
+    @Test
+    public void testWriteBatch(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = createSessionWithSecret1();
+        session.storeData("123".toCharArray(), Collections.singletonList("org.esoul.surpass.persist.LocalFileSystemPersistenceService"));
+        Assertions.assertFalse(session.unsavedDataExists());
+
+        session.writeBatch(List.of(new RowMutation.Create("pass2".toCharArray(), "id2".toCharArray(), "note2".toCharArray()),
+                new RowMutation.Update(0, null, "id1-upd".toCharArray(), "n".toCharArray()), new RowMutation.Remove(1)));
+        Assertions.assertTrue(session.unsavedDataExists());
+        SecretTable secretTable = session.getSecretTable();
+        Assertions.assertEquals(1, secretTable.getRowNumber());
+        Assertions.assertArrayEquals("pass1".getBytes(UTF_8), secretTable.readSecret(0));
+        Assertions.assertArrayEquals("id1-upd".getBytes(UTF_8), secretTable.readIdentifier(0));
+
+        // The second mutation refers to a nonexistent row, so the first one is not applied either.
+        Assertions.assertThrows(IllegalArgumentException.class, () -> session.writeBatch(
+                List.of(new RowMutation.Create("pass3".toCharArray(), "id3".toCharArray(), "note3".toCharArray()), new RowMutation.Remove(2))));
+        Assertions.assertEquals(1, secretTable.getRowNumber());
+    }
+
+    @Test
+    public void testRowChangeEvents(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = createSessionWithSecret1();
+        List<RowChangeEvent> events = new ArrayList<>();
+        RowChangeListener listener = events::add;
+        session.addRowChangeListener(listener);
+        session.write("pass2".toCharArray(), "id2".toCharArray(), "note2".toCharArray());
+        session.setEditMode(0);
+        session.write(new char[0], "id1-upd".toCharArray(), "note1".toCharArray());
+        session.remove(0);
+        session.writeBatch(List.of(new RowMutation.Remove(0)));
+        Assertions.assertEquals(List.of(new RowChangeEvent(RowChangeEvent.Type.INSERTED, 1, 1), new RowChangeEvent(RowChangeEvent.Type.UPDATED, 0, 0),
+                new RowChangeEvent(RowChangeEvent.Type.REMOVED, 0, 0), new RowChangeEvent(RowChangeEvent.Type.RELOADED, -1, -1)), events);
+
+        session.removeRowChangeListener(listener);
+        events.clear();
+        session.write("pass3".toCharArray(), "id3".toCharArray(), "note3".toCharArray());
+        Assertions.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testAsync(@TempDir Path tmp) throws Exception {
+        Fs.setupDataDir(tmp);
+        Session session = createSessionWithSecret1();
+        List<String> serviceIds = Collections.singletonList("org.esoul.surpass.persist.LocalFileSystemPersistenceService");
+        session.storeDataAsync("123".toCharArray(), serviceIds).orTimeout(1, TimeUnit.MINUTES).get();
+        Assertions.assertFalse(session.unsavedDataExists());
+        session.changeMasterPassAndStoreDataAsync("123".toCharArray(), "abc".toCharArray(), serviceIds).get();
+
+        Session loaded = SessionFactory.create();
+        loaded.start();
+        loaded.loadDataAsync("abc".toCharArray(), "org.esoul.surpass.persist.LocalFileSystemPersistenceService").get();
+        Assertions.assertArrayEquals("id1".getBytes(UTF_8), loaded.getSecretTable().readIdentifier(0));
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> loaded.loadDataAsync(new char[0], null).get());
+        Assertions.assertInstanceOf(InvalidPasswordException.class, e.getCause());
+        loaded.close();
+        session.close();
+    }
+
     private void checkSecret1(Session session, String masterPass)
             throws IOException, InvalidPasswordException, GeneralSecurityException, ServiceUnavailableException {
         session.loadData(masterPass.toCharArray(), "org.esoul.surpass.persist.LocalFileSystemPersistenceService");
@@ -21,6 +21,8 @@
 */
 package org.esoul.surpass.app;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Encapsulate the visual and logical state of the data in the application.
  *
@@ -32,7 +34,21 @@ final class DataState {
 
     volatile boolean dataFileLoaded = false;
 
-    volatile boolean unsavedDataExist = false;
+    /** Incremented by every modification of the data. */
+    final AtomicLong revision = new AtomicLong();
+
+    /** The last revision which was stored. The data is stored from a snapshot, so modifications can happen while storing. */
+    volatile long storedRevision = 0;
 
     volatile int currentlyEditedRow = -1;
+
+    /** The cipher text of the loaded or last stored data file. Null if neither happened in this session. */
+    volatile CipherText cipherText = null;
+
+    /**
+     * @param bytes The cipher text.
+     * @param revision The revision the cipher text is encrypted from, whether it is still up to date.
+     */
+    record CipherText(byte[] bytes, long revision) {
+    }
 }
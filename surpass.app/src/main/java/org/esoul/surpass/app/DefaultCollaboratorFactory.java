@@ -25,11 +25,22 @@ import java.util.ServiceLoader;
 import java.util.ServiceLoader.Provider;
 import java.util.stream.Stream;
 
+/**
+ * Obtains collaborators via {@link ServiceLoader}. If there are multiple providers of a service, the first one is used unless a system property with the name
+ * of the service (e.g. {@code org.esoul.surpass.table.api.SecretTable}) specifies the class name of the provider to use.
+ * 
+ * @author mgp
+ */
 public class DefaultCollaboratorFactory implements CollaboratorFactory {
 
     @Override
     public <T> T obtainOne(Class<T> clazz) throws ServiceUnavailableException {
-        return ServiceLoader.load(clazz).findFirst().orElseThrow(() -> new ServiceUnavailableException(clazz));
+        String providerName = System.getProperty(clazz.getName());
+        if (null == providerName) {
+            return ServiceLoader.load(clazz).findFirst().orElseThrow(() -> new ServiceUnavailableException(clazz));
+        }
+        return ServiceLoader.load(clazz).stream().filter(p -> p.type().getName().equals(providerName)).findFirst().map(Provider::get)
+                .orElseThrow(() -> new ServiceUnavailableException(clazz));
     }
 
     @Override
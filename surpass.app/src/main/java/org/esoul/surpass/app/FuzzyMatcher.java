@@ -0,0 +1,153 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.app;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate matching of a pattern against texts, for searching with typos. The edit distance is computed with Myers' bit-parallel algorithm: the column
+ * of the dynamic programming matrix is kept in the bits of a {@code long}, so each character of the text takes a few word operations regardless of the
+ * length of the pattern. A text also matches if it contains the characters of the pattern in order within a short part of it, e.g. an abbreviation.
+ * Patterns longer than {@value #MAX_PATTERN_LEN} characters are cut. Both the pattern and the texts are expected to be case folded.
+ *
+ * @author mgp
+ */
+final class FuzzyMatcher {
+
+    static final int MAX_PATTERN_LEN = Long.SIZE;
+
+    /** Returned when a text does not contain the pattern as a subsequence. */
+    static final int NO_SUBSEQUENCE = Integer.MAX_VALUE;
+
+    /** Shorter patterns are found as a subsequence in almost any text, so they only match within the edit distance. */
+    static final int MIN_SUBSEQUENCE_PATTERN_LEN = 3;
+
+    /** The longest part of a text a subsequence match may span, as a multiple of the length of the pattern. */
+    static final int MAX_SPAN_FACTOR = 3;
+
+    private static final int ASCII_LEN = 128;
+
+    private final String pattern;
+
+    /** The positions of each ASCII character in the pattern, one bit per position. */
+    private final long[] asciiPositions = new long[ASCII_LEN];
+
+    /** Same as {@link #asciiPositions} for the other characters. */
+    private final Map<Character, Long> otherPositions = new HashMap<>();
+
+    private final long lastPosition;
+
+    private final int maxDistance;
+
+    FuzzyMatcher(String pattern) {
+        this.pattern = pattern.length() > MAX_PATTERN_LEN ? pattern.substring(0, MAX_PATTERN_LEN) : pattern;
+        for (int i = 0; i < this.pattern.length(); i++) {
+            char c = this.pattern.charAt(i);
+            if (c < ASCII_LEN) {
+                asciiPositions[c] |= 1L << i;
+            } else {
+                otherPositions.merge(c, 1L << i, (positions, position) -> positions | position);
+            }
+        }
+        lastPosition = 1L << (this.pattern.length() - 1);
+        // Short patterns would match almost anything with a single error.
+        maxDistance = this.pattern.length() < 3 ? 0 : (this.pattern.length() + 1) / 3;
+    }
+
+    /**
+     * The maximum edit distance of a match, about one error per three characters of the pattern.
+     */
+    int maxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Returns the smallest edit distance between the pattern and any substring of the text.
+     */
+    int distance(String text) {
+        long pv = -1L;
+        long mv = 0L;
+        int score = pattern.length();
+        int best = score;
+        for (int i = 0; i < text.length() && 0 < best; i++) {
+            long eq = positions(text.charAt(i));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if (0 != (ph & lastPosition)) {
+                score++;
+            } else if (0 != (mh & lastPosition)) {
+                score--;
+            }
+            // The match may start anywhere in the text, so no horizontal delta is carried in.
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            best = Math.min(best, score);
+        }
+        return best;
+    }
+
+    /**
+     * Finds the characters of the pattern in order in the text and returns the length of the shortest part of the text which contains them. The shorter the
+     * span, the closer the match. Returns {@link #NO_SUBSEQUENCE} if not all characters are found, if the shortest span is longer than
+     * {@value #MAX_SPAN_FACTOR} times the pattern, or if the pattern is shorter than {@value #MIN_SUBSEQUENCE_PATTERN_LEN} characters. A pattern scattered
+     * over a long text is a coincidence rather than an abbreviation.
+     */
+    int subsequenceSpan(String text) {
+        if (pattern.length() < MIN_SUBSEQUENCE_PATTERN_LEN) {
+            return NO_SUBSEQUENCE;
+        }
+        int best = NO_SUBSEQUENCE;
+        int from = 0;
+        while (true) {
+            // Find the earliest end of a match starting at or after from, then walk back to the latest start of a match with that end.
+            int end = -1;
+            for (int i = from, p = 0; i < text.length(); i++) {
+                if (text.charAt(i) == pattern.charAt(p) && ++p == pattern.length()) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                break;
+            }
+            int start = end;
+            for (int p = pattern.length() - 1; p >= 0; start--) {
+                if (text.charAt(start) == pattern.charAt(p)) {
+                    p--;
+                }
+            }
+            start++;
+            best = Math.min(best, end - start + 1);
+            from = start + 1;
+        }
+        return best <= MAX_SPAN_FACTOR * pattern.length() ? best : NO_SUBSEQUENCE;
+    }
+
+    private long positions(char c) {
+        return c < ASCII_LEN ? asciiPositions[c] : otherPositions.getOrDefault(c, 0L);
+    }
+}
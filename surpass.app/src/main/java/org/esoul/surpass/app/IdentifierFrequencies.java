@@ -0,0 +1,161 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.app;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.esoul.surpass.table.api.SecretTable;
+
+/**
+ * Counts how many rows of a {@link SecretTable} use each identifier. The counts are kept up to date by {@link Session} on every modification of the rows, so
+ * the most used identifiers are selected from the counts with a bounded heap instead of reading and sorting all rows. These counts are the only ones kept for
+ * the identifiers, the {@link IdentifierTrie} used for completion is updated from them on every change. This class is thread-safe.
+ *
+ * @author mgp
+ */
+final class IdentifierFrequencies {
+
+    private static final int INITIAL_BUFFER_LEN = 64;
+
+    /** From the most used to the least, the identifiers used equally often in alphabetical order. */
+    private static final Comparator<Map.Entry<String, int[]>> BY_USE = Comparator.<Map.Entry<String, int[]>> comparingInt(e -> e.getValue()[0]).reversed()
+            .thenComparing(Map.Entry::getKey);
+
+    private final Map<String, int[]> counts = new HashMap<>();
+
+    private final IdentifierTrie identifierTrie = new IdentifierTrie();
+
+    /**
+     * Counts the identifiers of the current rows of a given table.
+     */
+    static IdentifierFrequencies of(SecretTable secretTable) {
+        IdentifierFrequencies identifierFrequencies = new IdentifierFrequencies();
+        identifierFrequencies.rebuild(secretTable);
+        return identifierFrequencies;
+    }
+
+    /**
+     * Replaces the counts with the ones of the current rows of a given table. The identifiers are counted by their bytes, which are read into a single reused
+     * buffer, so only the unique identifiers are copied and decoded.
+     */
+    synchronized void rebuild(SecretTable secretTable) {
+        Map<ByteBuffer, int[]> byteCounts = new HashMap<>();
+        ByteBuffer identifier = ByteBuffer.allocate(INITIAL_BUFFER_LEN);
+        for (int row = 0; row < secretTable.getRowNumber(); row++) {
+            identifier = readIdentifier(secretTable, row, identifier);
+            int[] count = byteCounts.get(identifier);
+            if (null == count) {
+                byteCounts.put(ByteBuffer.allocate(identifier.remaining()).put(identifier.duplicate()).flip(), new int[] { 1 });
+            } else {
+                count[0]++;
+            }
+        }
+        clear();
+        byteCounts.forEach((identifierBytes, count) -> {
+            counts.computeIfAbsent(StandardCharsets.UTF_8.decode(identifierBytes).toString().trim(), _ -> new int[1])[0] += count[0];
+        });
+        counts.forEach((key, count) -> identifierTrie.set(key, count[0]));
+    }
+
+    /**
+     * Counts one more use of a given identifier.
+     */
+    synchronized void add(String identifier) {
+        identifierTrie.set(identifier, ++counts.computeIfAbsent(identifier, _ -> new int[1])[0]);
+    }
+
+    /**
+     * Counts one less use of a given identifier.
+     */
+    synchronized void remove(String identifier) {
+        int[] count = counts.get(identifier);
+        if (null == count) {
+            return;
+        }
+        if (0 == --count[0]) {
+            counts.remove(identifier);
+        }
+        identifierTrie.set(identifier, count[0]);
+    }
+
+    synchronized void clear() {
+        counts.clear();
+        identifierTrie.clear();
+    }
+
+    /**
+     * Returns the most used identifiers which start with the given prefix, ignoring case. See {@link IdentifierTrie#complete(String, int)}.
+     */
+    List<String> complete(String prefix, int limit) {
+        return identifierTrie.complete(prefix, limit);
+    }
+
+    /**
+     * Returns the most used identifiers, from the most used to the least. Only the {@code limit} best identifiers are kept in a heap while the counts are
+     * scanned, so the time taken is linear in the number of identifiers for a small limit.
+     */
+    synchronized List<String> mostUsed(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        // The head of the heap is the least used of the best identifiers seen so far.
+        PriorityQueue<Map.Entry<String, int[]>> best = new PriorityQueue<>(Math.min(limit, counts.size()) + 1, BY_USE.reversed());
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (BY_USE.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>(best);
+        entries.sort(BY_USE);
+        List<String> identifiers = new ArrayList<>(entries.size());
+        for (Map.Entry<String, int[]> entry : entries) {
+            identifiers.add(entry.getKey());
+        }
+        return identifiers;
+    }
+
+    /**
+     * Reads the identifier of a given row into the buffer, which is replaced with a bigger one if needed. The returned buffer is ready to be read.
+     */
+    private static ByteBuffer readIdentifier(SecretTable secretTable, int row, ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            try {
+                secretTable.readIdentifierInto(row, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException _) {
+                buffer = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), secretTable.getIdentifierLength(row)));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A prefix trie of the identifiers of a table weighted by how many rows use each identifier. The path of an identifier is its case folded form, so completion
+ * ignores case, while the identifiers are completed as they were written. Each node keeps the {@link #MAX_COMPLETIONS} most used identifiers below it, so
+ * completing a prefix takes time proportional to the length of the prefix. Changing the count of an identifier updates these only along its path. The counts
+ * are owned by {@link IdentifierFrequencies}, which passes every change to its trie. This class is thread-safe.
+ *
+ * @author mgp
+ */
+final class IdentifierTrie {
+
+    static final int MAX_COMPLETIONS = 10;
+
+    private static final Comparator<Completion> BY_USE = Comparator.comparingInt(Completion::count).reversed().thenComparing(Completion::identifier);
+
+    private final Node root = new Node();
+
+    /**
+     * Sets how many rows use a given identifier. A count of zero removes the identifier.
+     */
+    synchronized void set(String identifier, int count) {
+        List<Node> path = path(identifier, count > 0);
+        if (null == path) {
+            return;
+        }
+        if (count > 0) {
+            path.getLast().uses.put(identifier, count);
+        } else if (null == path.getLast().uses.remove(identifier)) {
+            return;
+        }
+        for (int i = path.size() - 1; i > 0 && path.get(i).isEmpty(); i--) {
+            path.get(i - 1).children.remove(path.get(i).key);
+            path.remove(i);
+        }
+        update(path);
+    }
+
+    synchronized void clear() {
+        root.children.clear();
+        root.uses.clear();
+        root.top = new Completion[0];
+    }
+
+    /**
+     * Returns the most used identifiers which start with the given prefix, ignoring case.
+     * 
+     * @param limit The maximum number of completions. At most {@link #MAX_COMPLETIONS} are kept.
+     * @return The completions from the most used to the least.
+     */
+    synchronized List<String> complete(String prefix, int limit) {
+        List<Node> path = path(prefix, false);
+        if (null == path) {
+            return List.of();
+        }
+        Completion[] top = path.getLast().top;
+        List<String> completions = new ArrayList<>(Math.min(limit, top.length));
+        for (int i = 0; i < top.length && i < limit; i++) {
+            completions.add(top[i].identifier());
+        }
+        return completions;
+    }
+
+    /**
+     * Returns the nodes from the root to the node of a given text. Missing nodes are created if requested, otherwise {@code null} is returned.
+     */
+    private List<Node> path(String text, boolean create) {
+        String key = text.toLowerCase(Locale.ROOT);
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node child = node.children.get(c);
+            if (null == child) {
+                if (!create) {
+                    return null;
+                }
+                child = new Node(c);
+                node.children.put(c, child);
+            }
+            node = child;
+            path.add(node);
+        }
+        return path;
+    }
+
+    /**
+     * Recomputes the most used identifiers of the nodes of a path, from the deepest to the root. Nothing changed outside of the path, so the other nodes
+     * stay valid.
+     */
+    private static void update(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).updateTop();
+        }
+    }
+
+    private record Completion(String identifier, int count) {
+    }
+
+    private static final class Node {
+
+        private final char key;
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        /** The identifiers which end at this node by their exact form. Identifiers which differ only by case share a node. */
+        private final Map<String, Integer> uses = new HashMap<>(1);
+
+        /** The most used identifiers at or below this node, from the most used to the least. */
+        private Completion[] top = new Completion[0];
+
+        private Node() {
+            this('\0');
+        }
+
+        private Node(char key) {
+            this.key = key;
+        }
+
+        private boolean isEmpty() {
+            return children.isEmpty() && uses.isEmpty();
+        }
+
+        private void updateTop() {
+            List<Completion> candidates = new ArrayList<>();
+            uses.forEach((identifier, count) -> candidates.add(new Completion(identifier, count)));
+            for (Node child : children.values()) {
+                candidates.addAll(Arrays.asList(child.top));
+            }
+            candidates.sort(BY_USE);
+            top = candidates.subList(0, Math.min(MAX_COMPLETIONS, candidates.size())).toArray(new Completion[0]);
+        }
+    }
+}
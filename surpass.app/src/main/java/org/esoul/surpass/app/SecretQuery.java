@@ -21,36 +21,163 @@
 */
 package org.esoul.surpass.app;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.esoul.surpass.table.api.RowView;
 import org.esoul.surpass.table.api.SecretTable;
 
 public class SecretQuery {
 
     private final SecretTable secretTable;
 
+    private final SubstringIndex substringIndex;
+
+    private final IdentifierFrequencies identifierFrequencies;
+
+    /**
+     * Creates a query over the current rows of a given table. The substring searches, the completions and the identifier frequencies use indexes built
+     * here, so they do not see later modifications.
+     * 
+     * @param secretTable The table to query.
+     */
     public SecretQuery(SecretTable secretTable) {
+        this(secretTable, SubstringIndex.of(secretTable), IdentifierFrequencies.of(secretTable));
+    }
+
+    SecretQuery(SecretTable secretTable, SubstringIndex substringIndex, IdentifierFrequencies identifierFrequencies) {
         this.secretTable = secretTable;
+        this.substringIndex = substringIndex;
+        this.identifierFrequencies = identifierFrequencies;
     }
 
     /**
-     * Returns all unique identifiers ordered from the most frequently used to the least.
+     * Returns all unique identifiers ordered from the most frequently used to the least. See {@link #getUniqueIdentifiers(int)}.
      * 
      * @return A {@link List} of unique identifiers.
      */
     public List<String> getUniqueIdentifiers() {
-        Map<String, Integer> freqMap = new HashMap<>();
-        for (int row = 0; row < secretTable.getRowNumber(); row++) {
-            byte[] identifierBytes = secretTable.readIdentifier(row);
-            String identifier = new String(identifierBytes, StandardCharsets.UTF_8).trim();
-            freqMap.merge(identifier, 1, (oldValue, value) -> oldValue + value);
+        return getUniqueIdentifiers(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the most frequently used identifiers ordered from the most used to the least. Identifiers used equally often are ordered alphabetically. The
+     * frequencies are kept up to date as the rows change, so no row is read.
+     * 
+     * @param limit The maximum number of identifiers to return.
+     * @return A {@link List} of at most {@code limit} unique identifiers.
+     */
+    public List<String> getUniqueIdentifiers(int limit) {
+        return identifierFrequencies.mostUsed(limit);
+    }
+
+    /**
+     * Finds the rows with exactly the given identifier. The lookup uses the identifier index of the table and does not scan the rows.
+     * 
+     * @param identifier The identifier to look for.
+     * @return The matching rows in ascending order. Empty if there are none.
+     */
+    public int[] findRowsByIdentifier(String identifier) {
+        return secretTable.findRowsByIdentifier(identifier.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the most used identifiers which start with the given prefix, ignoring case. The completions are kept up to date in a prefix trie, so the time
+     * taken depends only on the length of the prefix.
+     * 
+     * @param prefix The typed part of the identifier. All identifiers match the empty prefix.
+     * @param limit The maximum number of completions. At most ten are kept per prefix.
+     * @return The completions from the most used to the least.
+     */
+    public List<String> completeIdentifier(String prefix, int limit) {
+        return identifierFrequencies.complete(prefix, limit);
+    }
+
+    /**
+     * Finds the rows whose identifier or note contains the given text, ignoring case. The rows are looked up in a trigram index, no row is decoded or scanned
+     * with a regular expression.
+     * 
+     * @param text The text to look for.
+     * @return The matching rows in ascending order.
+     */
+    public int[] findRowsContaining(String text) {
+        return substringIndex.search(text);
+    }
+
+    /**
+     * Finds the rows whose identifier or note approximately contains the given text, ignoring case, e.g. a mistyped host or user name. A row matches if a
+     * part of it is within a small edit distance of the text, about one error per three characters, or if it contains the characters of the text in order.
+     * 
+     * @param text The text to look for.
+     * @return The matching rows from the closest match to the farthest.
+     */
+    public int[] findRowsFuzzy(String text) {
+        return substringIndex.fuzzySearch(text);
+    }
+
+    /**
+     * Same as {@link #containing(String)}, but the rows are matched like in {@link #findRowsFuzzy(String)}.
+     * 
+     * @param text The text to look for.
+     * @return A predicate over rows.
+     */
+    public IntPredicate approximatelyContaining(String text) {
+        return substringIndex.fuzzyMatcher(text);
+    }
+
+    /**
+     * Returns a predicate which tells whether a row contains the given text, ignoring case. Meant for filtering a table, the matches are searched once and
+     * again only after the rows were modified.
+     * 
+     * @param text The text to look for.
+     * @return A predicate over rows.
+     */
+    public IntPredicate containing(String text) {
+        return substringIndex.matcher(text);
+    }
+
+    /**
+     * Returns a stream of the rows which match a filter, read from a snapshot of the table. See {@link SecretTable#rows(Predicate)}. The stream can be
+     * processed in parallel. Closing the stream closes the snapshot, so use the stream in a try-with-resources statement.
+     * 
+     * @param filter The filter of the rows, applied before anything else in the pipeline.
+     * @return A stream of the matching rows.
+     */
+    public Stream<RowView> rows(Predicate<? super RowView> filter) {
+        return secretTable.rows(filter);
+    }
+
+    /**
+     * Finds the secrets which are used in more than one row. The rows are grouped by secret in parallel over a snapshot of the table. The copies of the
+     * secrets are wiped before returning.
+     * 
+     * @return The groups of rows which share a secret, each in ascending order. The groups are ordered by their first row.
+     */
+    public List<int[]> findRowsWithSameSecret() {
+        Map<ByteBuffer, List<Integer>> rowsBySecret;
+        try (Stream<RowView> rows = secretTable.rows()) {
+            rowsBySecret = rows.parallel().collect(
+                    Collectors.groupingByConcurrent(rowView -> ByteBuffer.wrap(rowView.readSecret()), Collectors.mapping(RowView::row, Collectors.toList())));
         }
-        return freqMap.entrySet().stream().sorted((e1, e2) -> {
-            return e2.getValue().compareTo(e1.getValue());
-        }).map(Map.Entry::getKey).collect(Collectors.toList());
+        List<int[]> groups = new ArrayList<>();
+        rowsBySecret.forEach((secret, rows) -> {
+            if (rows.size() > 1) {
+                int[] group = rows.stream().mapToInt(Integer::intValue).toArray();
+                Arrays.sort(group);
+                groups.add(group);
+            }
+            Arrays.fill(secret.array(), (byte) 0);
+        });
+        groups.sort(Comparator.comparingInt(group -> group[0]));
+        return groups;
     }
 }
@@ -24,10 +24,21 @@ package org.esoul.surpass.app;
 import java.io.IOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.security.GeneralSecurityException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.esoul.surpass.crypto.api.ContextAwareCryptoService;
@@ -40,14 +51,18 @@ import org.esoul.surpass.secgen.api.CharClass;
 import org.esoul.surpass.secgen.api.RandomSecretService;
 import org.esoul.surpass.table.api.EmptySequenceException;
 import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
 import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
 
 /**
  * Facilitates the interactions between various services to provide a high-level API for building user interfaces. Logging in response to errors is also done by
  * this class, all exceptions are re-thrown. A typical usage pattern would look like this: Obtain an instance of this class. When the application is loaded,
  * call {@link #start()}. When the application is ready to process user input, call {@link #loadData(char[])}. React to user input via
  * {@link #write(char[], char[], char[])}, {@link #setEditMode(int)}, {@link #remove(int)}, etc. When the user wants to persist their changes, call
- * {@link #storeData(char[], Collection)}. Note, this class is thread-safe if the {@link SecretTable} implementation is.
+ * {@link #storeData(char[], Collection)}. When the application exits, call {@link #close()}. Note, this class is thread-safe if the {@link SecretTable}
+ * implementation is. The data is stored from a {@link SecretTableSnapshot}, so the table can be modified while it is being encrypted and written. Loading and
+ * storing also have asynchronous variants, e.g. {@link #loadDataAsync(char[], String)}, which run on a virtual thread each.
  * 
  * @author mgp
  */
@@ -55,6 +70,9 @@ public class Session {
 
     private static final Logger logger = System.getLogger(Session.class.getSimpleName());
 
+    /** How long {@link #close()} waits for interrupted asynchronous operations to stop. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 2_000;
+
     private CollaboratorFactory collaboratorFactory = null;
 
     private PrimaryPersistenceService primaryPersistenceService = null;
@@ -71,6 +89,14 @@ public class Session {
 
     private DataState state = new DataState();
 
+    private final SubstringIndex substringIndex = new SubstringIndex();
+
+    private final IdentifierFrequencies identifierFrequencies = new IdentifierFrequencies();
+
+    private final List<RowChangeListener> rowChangeListeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
     public Session(CollaboratorFactory collaboratorFactory) {
         this.collaboratorFactory = collaboratorFactory;
     }
@@ -121,9 +147,14 @@ public class Session {
         }
         char[] passwordHash = cryptoService.digest(password);
         try {
-            byte[] clearText = readCipherTextAndDecrypt(passwordHash, password, serviceId);
+            byte[] cipherText = readCipherText(passwordHash, serviceId);
+            byte[] clearText = 0 != cipherText.length ? cryptoService.decrypt(password, cipherText) : cipherText;
+            state.cipherText = 0 != cipherText.length ? new DataState.CipherText(cipherText, state.revision.get()) : null;
             secretTable.load(clearText);
+            rebuildIndexes();
+            state.currentlyEditedRow = -1;
             state.dataFileLoaded = true;
+            fireRowsChanged(RowChangeEvent.reloaded());
         } catch (IOException e) {
             logger.log(Level.ERROR, () -> "Load secrets error!", e);
             throw e;
@@ -140,9 +171,9 @@ public class Session {
             char[] currentPasswordHash = cryptoService.digest(currentMasterPass);
             char[] newPasswordHash = cryptoService.digest(newMasterPass);
             try {
-                checkCanDecryptPassword(currentPasswordHash, currentMasterPass, serviceIds);
-                byte[] clearText = secretTable.toOneDimension();
-                byte[] cipherText = cryptoService.encrypt(newMasterPass, clearText);
+                checkPassword(currentPasswordHash, currentMasterPass, serviceIds);
+                long revision = state.revision.get();
+                byte[] cipherText = changeKey(currentMasterPass, newMasterPass, revision);
                 ContextAwareCryptoService currentContextAwareCrypto = contextAwareCryptoAbstractFactory.create(cryptoService, currentPasswordHash);
                 ContextAwareCryptoService newContextAwareCrypto = contextAwareCryptoAbstractFactory.create(cryptoService, newPasswordHash);
                 for (String serviceId : serviceIds) {
@@ -151,7 +182,8 @@ public class Session {
                     persistenceService.write(PersistenceDefaults.DEFAULT_SECRETS, cipherText);
                     persistenceService.regenerateSupprtingData(newContextAwareCrypto);
                 }
-                state.unsavedDataExist = false;
+                state.storedRevision = revision;
+                state.cipherText = new DataState.CipherText(cipherText, revision);
             } catch (IOException e) {
                 logger.log(Level.ERROR, () -> "Store secrets error!", e);
                 throw e;
@@ -179,8 +211,9 @@ public class Session {
         if (null != password) {
             char[] passwordHash = cryptoService.digest(password);
             try {
-                checkCanDecryptPassword(passwordHash, password, serviceIds);
-                byte[] clearText = secretTable.toOneDimension();
+                checkPassword(passwordHash, password, serviceIds);
+                long revision = state.revision.get();
+                byte[] clearText = serialize();
                 byte[] cipherText = cryptoService.encrypt(password, clearText);
                 ContextAwareCryptoService contextAwareCrypto = contextAwareCryptoAbstractFactory.create(cryptoService, passwordHash);
                 for (String serviceId : serviceIds) {
@@ -188,7 +221,8 @@ public class Session {
                     persistenceService.authorize(contextAwareCrypto);
                     persistenceService.write(PersistenceDefaults.DEFAULT_SECRETS, cipherText);
                 }
-                state.unsavedDataExist = false;
+                state.storedRevision = revision;
+                state.cipherText = new DataState.CipherText(cipherText, revision);
             } catch (IOException e) {
                 logger.log(Level.ERROR, () -> "Store secrets error!", e);
                 throw e;
@@ -202,10 +236,116 @@ public class Session {
         }
     }
 
+    /**
+     * Runs {@link #loadData(char[], String)} on a virtual thread.
+     * <p>
+     * The returned future completes with the exception thrown by the operation, if any. Completing the future before the operation, by cancelling it or with a
+     * timeout such as {@link CompletableFuture#orTimeout(long, TimeUnit)}, interrupts the operation, which stops at its next interruptible point, e.g.
+     * blocking I/O. {@link #close()} interrupts the operation as well. The password must not be changed until the future completes.
+     */
+    public CompletableFuture<Void> loadDataAsync(char[] password, String serviceId) {
+        return submit(() -> loadData(password, serviceId));
+    }
+
+    /**
+     * Runs {@link #storeData(char[], Collection)} on a virtual thread.
+     * <p>
+     * The returned future completes with the exception thrown by the operation, if any. Completing the future before the operation, by cancelling it or with a
+     * timeout such as {@link CompletableFuture#orTimeout(long, TimeUnit)}, interrupts the operation, which stops at its next interruptible point, e.g.
+     * blocking I/O. {@link #close()} interrupts the operation as well. The password and the service IDs must not be changed until the future completes.
+     */
+    public CompletableFuture<Void> storeDataAsync(char[] password, Collection<String> serviceIds) {
+        return submit(() -> storeData(password, serviceIds));
+    }
+
+    /**
+     * Runs {@link #changeMasterPassAndStoreData(char[], char[], Collection)} on a virtual thread.
+     * <p>
+     * The returned future completes with the exception thrown by the operation, if any. Completing the future before the operation, by cancelling it or with a
+     * timeout such as {@link CompletableFuture#orTimeout(long, TimeUnit)}, interrupts the operation, which stops at its next interruptible point, e.g.
+     * blocking I/O. {@link #close()} interrupts the operation as well. The passwords and the service IDs must not be changed until the future completes.
+     */
+    public CompletableFuture<Void> changeMasterPassAndStoreDataAsync(char[] currentMasterPass, char[] newMasterPass, Collection<String> serviceIds) {
+        return submit(() -> changeMasterPassAndStoreData(currentMasterPass, newMasterPass, serviceIds));
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the operation on a new virtual thread. Completing the returned future before the operation interrupts it.
+     */
+    private CompletableFuture<Void> submit(Operation operation) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            operation.run();
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    result.complete(null);
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (CancellationException | InterruptedException e) {
+                    result.cancel(false);
+                }
+            }
+        };
+        result.whenComplete((_, _) -> task.cancel(true));
+        executor.execute(task);
+        return result;
+    }
+
+    /**
+     * Returns the data encrypted with the new password. If the data is unchanged since it was loaded or stored, only the key of the existing cipher text is
+     * changed, which for envelope encryption does not re-encrypt the data.
+     */
+    private byte[] changeKey(char[] currentMasterPass, char[] newMasterPass, long revision) throws GeneralSecurityException {
+        DataState.CipherText cipherText = state.cipherText;
+        if (null != cipherText && revision == cipherText.revision()) {
+            return cryptoService.changeKey(currentMasterPass, newMasterPass, cipherText.bytes());
+        }
+        return cryptoService.encrypt(newMasterPass, serialize());
+    }
+
+    private byte[] serialize() {
+        try (SecretTableSnapshot snapshot = secretTable.snapshot()) {
+            return snapshot.toOneDimension();
+        }
+    }
+
+    /**
+     * Checks the password with the key verifier of the loaded or last stored cipher text. Only without one the data file is read from every service and
+     * decrypted.
+     */
+    private void checkPassword(char[] passwordHash, char[] password, Collection<String> serviceIds) throws IOException, InvalidPasswordException {
+        DataState.CipherText cipherText = state.cipherText;
+        byte[] keyVerifier = null != cipherText ? cryptoService.getKeyVerifier(cipherText.bytes()) : null;
+        if (null == keyVerifier) {
+            checkCanDecryptPassword(passwordHash, password, serviceIds);
+            return;
+        }
+        try {
+            if (!cryptoService.verifyKey(password, keyVerifier)) {
+                throw new InvalidPasswordException("Password does not match the data file!");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new InvalidPasswordException(e);
+        }
+    }
+
     private void checkCanDecryptPassword(char[] passwordHash, char[] password, Collection<String> serviceIds) throws IOException, InvalidPasswordException {
         try {
             for (var serviceId : serviceIds) {
-                readCipherTextAndDecrypt(passwordHash, password, serviceId);
+                byte[] cipherText = readCipherText(passwordHash, serviceId);
+                if (0 != cipherText.length) {
+                    cryptoService.decrypt(password, cipherText);
+                }
             }
         } catch (GeneralSecurityException e) {
             throw new InvalidPasswordException(e);
@@ -214,15 +354,11 @@ public class Session {
         }
     }
 
-    private byte[] readCipherTextAndDecrypt(char[] passwordHash, char[] password, String serviceId) throws IOException, GeneralSecurityException {
+    private byte[] readCipherText(char[] passwordHash, String serviceId) throws IOException {
         ContextAwareCryptoService contextAwareCrypto = contextAwareCryptoAbstractFactory.create(cryptoService, passwordHash);
         PersistenceService persistenceService = persistenceServiceMap.get(serviceId);
         persistenceService.authorize(contextAwareCrypto);
-        byte[] cipherText = persistenceService.read(PersistenceDefaults.DEFAULT_SECRETS);
-        if (cipherText.length == 0) {
-            return cipherText;
-        }
-        return cryptoService.decrypt(password, cipherText);
+        return persistenceService.read(PersistenceDefaults.DEFAULT_SECRETS);
     }
 
     /**
@@ -246,13 +382,84 @@ public class Session {
      */
     public void write(char[] password, char[] identifier, char[] note) throws ExistingDataNotLoadedException, MaxSizeExceededException, EmptySequenceException {
         checkDataLoaded();
+        RowChangeEvent event;
         if (0 <= state.currentlyEditedRow) {
-            secretTable.updateRow(state.currentlyEditedRow, 0 != password.length ? password : null, identifier, note);
+            int row = state.currentlyEditedRow;
+            String previousIdentifier = identifierOf(row);
+            secretTable.updateRow(row, 0 != password.length ? password : null, identifier, note);
+            unindexIdentifier(previousIdentifier);
+            indexRow(row);
             state.currentlyEditedRow = -1;
+            event = new RowChangeEvent(RowChangeEvent.Type.UPDATED, row, row);
         } else {
             secretTable.createRow(password, identifier, note);
+            int row = secretTable.getRowNumber() - 1;
+            indexRow(row);
+            event = new RowChangeEvent(RowChangeEvent.Type.INSERTED, row, row);
         }
-        state.unsavedDataExist = true;
+        state.revision.incrementAndGet();
+        fireRowsChanged(event);
+    }
+
+    /**
+     * Applies a batch of changes atomically, e.g. an import or the removal of multiple rows. See {@link SecretTable#applyBatch(List)}.
+     * 
+     * @param mutations The changes to apply in order.
+     * @throws ExistingDataNotLoadedException
+     * @throws MaxSizeExceededException
+     * @throws EmptySequenceException
+     */
+    public void writeBatch(List<RowMutation> mutations) throws ExistingDataNotLoadedException, MaxSizeExceededException, EmptySequenceException {
+        checkDataLoaded();
+        secretTable.applyBatch(mutations);
+        for (RowMutation mutation : mutations) {
+            if (mutation instanceof RowMutation.Remove remove) {
+                editedRowRemoved(remove.row());
+            }
+        }
+        rebuildIndexes();
+        state.revision.incrementAndGet();
+        fireRowsChanged(RowChangeEvent.reloaded());
+    }
+
+    /**
+     * Registers a listener which is notified after every change of the rows, e.g. to update a view of the table incrementally.
+     * 
+     * @param listener The listener to add.
+     */
+    public void addRowChangeListener(RowChangeListener listener) {
+        rowChangeListeners.add(listener);
+    }
+
+    public void removeRowChangeListener(RowChangeListener listener) {
+        rowChangeListeners.remove(listener);
+    }
+
+    private void fireRowsChanged(RowChangeEvent event) {
+        for (RowChangeListener listener : rowChangeListeners) {
+            listener.rowsChanged(event);
+        }
+    }
+
+    /**
+     * Adds a new or updated row to the indexes. A previous identifier of the row is removed by the caller.
+     */
+    private void indexRow(int row) {
+        substringIndex.set(row, secretTable);
+        identifierFrequencies.add(identifierOf(row));
+    }
+
+    private void unindexIdentifier(String identifier) {
+        identifierFrequencies.remove(identifier);
+    }
+
+    private void rebuildIndexes() {
+        substringIndex.rebuild(secretTable);
+        identifierFrequencies.rebuild(secretTable);
+    }
+
+    private String identifierOf(int row) {
+        return new String(secretTable.readIdentifier(row), StandardCharsets.UTF_8).trim();
     }
 
     public void checkDataLoaded() throws ExistingDataNotLoadedException {
@@ -267,8 +474,25 @@ public class Session {
      * @param row The index of the row to remove.
      */
     public void remove(int row) {
+        String identifier = identifierOf(row);
         secretTable.removeRow(row);
-        state.unsavedDataExist = true;
+        editedRowRemoved(row);
+        substringIndex.remove(row);
+        unindexIdentifier(identifier);
+        state.revision.incrementAndGet();
+        fireRowsChanged(new RowChangeEvent(RowChangeEvent.Type.REMOVED, row, row));
+    }
+
+    /**
+     * Keeps the edited row in step with a removal, since the rows after a removed one move up. Edit mode ends if the edited row itself is removed.
+     */
+    private void editedRowRemoved(int row) {
+        int editedRow = state.currentlyEditedRow;
+        if (editedRow == row) {
+            state.currentlyEditedRow = -1;
+        } else if (editedRow > row) {
+            state.currentlyEditedRow = editedRow - 1;
+        }
     }
 
     /**
@@ -304,7 +528,7 @@ public class Session {
      * @return
      */
     public boolean unsavedDataExists() {
-        return state.unsavedDataExist;
+        return state.revision.get() != state.storedRevision;
     }
 
     /**
@@ -318,6 +542,33 @@ public class Session {
     }
 
     public SecretQuery createQuery() {
-        return new SecretQuery(secretTable);
+        return new SecretQuery(secretTable, substringIndex, identifierFrequencies);
+    }
+
+    /**
+     * Closes the session. Running asynchronous operations are interrupted and waited for up to {@value #CLOSE_TIMEOUT_MILLIS} ms, so an operation stuck on I/O
+     * cannot block the caller. Then the secrets held in memory are wiped. The session should not be used afterwards.
+     */
+    public void close() {
+        for (Runnable task : executor.shutdownNow()) {
+            if (task instanceof Future<?> future) {
+                future.cancel(false);
+            }
+        }
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.log(Level.WARNING, () -> "Asynchronous operations still running on close!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (null != secretTable) {
+            secretTable.close();
+        }
+        substringIndex.clear();
+        identifierFrequencies.clear();
+        if (null != cryptoService) {
+            cryptoService.clearKeys();
+        }
     }
 }
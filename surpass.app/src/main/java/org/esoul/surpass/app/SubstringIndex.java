@@ -0,0 +1,366 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import org.esoul.surpass.table.api.SecretTable;
+
+/**
+ * A trigram index over the case folded identifiers and notes of the rows of a {@link SecretTable}. A substring search intersects the rows of the trigrams of
+ * the searched text, starting with the rarest one, and only verifies the few remaining candidates. Texts shorter than a trigram are searched by scanning the
+ * already folded rows, so nothing is decoded on search. Fuzzy searches match the folded rows with a {@link FuzzyMatcher}. The index is kept up to date by
+ * {@link Session} on every modification of the rows. This class is thread-safe.
+ * <p>
+ * The postings hold slots rather than rows. A row keeps its slot until the index is compacted, so removing a row touches only the postings of its own
+ * trigrams, not the rows after it. The slots of the rows ascend with the rows, so the slots found by a search are mapped to rows in order. The mapping is
+ * rebuilt once after each modification, on the next search. The slots of removed rows are reclaimed once they outnumber the rows.
+ *
+ * @author mgp
+ */
+final class SubstringIndex {
+
+    private static final int GRAM_LEN = 3;
+
+    /** Separates the identifier from the note in the folded text of a row. It cannot be typed in a search, so no match spans both. */
+    private static final char SEPARATOR = '\0';
+
+    /** The folded identifier and note of each slot, {@code null} for the slot of a removed row. */
+    private final List<String> texts = new ArrayList<>();
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /** The slot of each row, in ascending order. */
+    private int[] rowSlots = new int[16];
+
+    private int rowNumber;
+
+    private int deadSlots;
+
+    /** The row of each slot, -1 for a dead one. Null after a modification until the next search needs it. */
+    private int[] slotRows;
+
+    /** Incremented by every modification, so the results of a search can be reused until the rows change. */
+    private volatile long modificationCount;
+
+    /**
+     * Builds an index of the current rows of a given table.
+     */
+    static SubstringIndex of(SecretTable secretTable) {
+        SubstringIndex substringIndex = new SubstringIndex();
+        substringIndex.rebuild(secretTable);
+        return substringIndex;
+    }
+
+    /**
+     * Replaces the index with the one of the current rows of a given table.
+     */
+    synchronized void rebuild(SecretTable secretTable) {
+        clear();
+        for (int row = 0; row < secretTable.getRowNumber(); row++) {
+            set(row, secretTable);
+        }
+    }
+
+    /**
+     * Indexes a given row of a table. The row is either an existing one or the one after the last.
+     */
+    synchronized void set(int row, SecretTable secretTable) {
+        String text = fold(new String(secretTable.readIdentifier(row), StandardCharsets.UTF_8) + SEPARATOR
+                + new String(secretTable.readNote(row), StandardCharsets.UTF_8));
+        int slot;
+        if (row < rowNumber) {
+            slot = rowSlots[row];
+            removeGrams(slot, texts.set(slot, text));
+        } else {
+            slot = texts.size();
+            texts.add(text);
+            if (rowNumber == rowSlots.length) {
+                rowSlots = Arrays.copyOf(rowSlots, 2 * rowNumber);
+            }
+            rowSlots[rowNumber++] = slot;
+        }
+        for (long gram : grams(text)) {
+            postings.computeIfAbsent(gram, _ -> new Postings()).add(slot);
+        }
+        modified();
+    }
+
+    /**
+     * Removes a given row, the rows after it move up. The postings of the other rows are left as they are.
+     */
+    synchronized void remove(int row) {
+        int slot = rowSlots[row];
+        removeGrams(slot, texts.set(slot, null));
+        System.arraycopy(rowSlots, row + 1, rowSlots, row, rowNumber - row - 1);
+        rowNumber--;
+        deadSlots++;
+        modified();
+        if (deadSlots > rowNumber) {
+            compact();
+        }
+    }
+
+    synchronized void clear() {
+        texts.clear();
+        postings.clear();
+        rowNumber = 0;
+        deadSlots = 0;
+        modified();
+    }
+
+    private void modified() {
+        slotRows = null;
+        modificationCount++;
+    }
+
+    /**
+     * Renumbers the slots to the rows, dropping the slots of the removed rows. The order of the postings is kept, since the slots ascend with the rows.
+     */
+    private void compact() {
+        int[] rows = slotRows();
+        for (Postings gramSlots : postings.values()) {
+            for (int i = 0; i < gramSlots.size; i++) {
+                gramSlots.slots[i] = rows[gramSlots.slots[i]];
+            }
+        }
+        texts.removeIf(Objects::isNull);
+        for (int row = 0; row < rowNumber; row++) {
+            rowSlots[row] = row;
+        }
+        deadSlots = 0;
+        slotRows = null;
+    }
+
+    /**
+     * Returns the row of each slot, building the mapping if the rows were modified since the last call.
+     */
+    private int[] slotRows() {
+        if (null == slotRows) {
+            int[] rows = new int[texts.size()];
+            Arrays.fill(rows, -1);
+            for (int row = 0; row < rowNumber; row++) {
+                rows[rowSlots[row]] = row;
+            }
+            slotRows = rows;
+        }
+        return slotRows;
+    }
+
+    /**
+     * Finds the rows whose identifier or note contains the given text, ignoring case.
+     * 
+     * @return The matching rows in ascending order.
+     */
+    synchronized int[] search(String text) {
+        String query = fold(text);
+        if (query.length() < GRAM_LEN) {
+            return scan(query);
+        }
+        long[] grams = grams(query);
+        Postings[] lists = new Postings[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (null == lists[i]) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, (p1, p2) -> Integer.compare(p1.size, p2.size));
+        int[] candidates = Arrays.copyOf(lists[0].slots, lists[0].size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && 0 < count; i++) {
+            int kept = 0;
+            for (int j = 0; j < count; j++) {
+                if (0 <= Arrays.binarySearch(lists[i].slots, 0, lists[i].size, candidates[j])) {
+                    candidates[kept++] = candidates[j];
+                }
+            }
+            count = kept;
+        }
+        // The trigrams can be found in a row in a different order, so the candidates are verified.
+        int[] rows = slotRows();
+        int matched = 0;
+        for (int j = 0; j < count; j++) {
+            if (texts.get(candidates[j]).contains(query)) {
+                candidates[matched++] = rows[candidates[j]];
+            }
+        }
+        return Arrays.copyOf(candidates, matched);
+    }
+
+    /**
+     * Finds the rows whose identifier or note approximately contains the given text, ignoring case. A row matches if some part of it is within the maximum
+     * edit distance of {@link FuzzyMatcher} from the text, or if a short part of it contains the characters of the text in order, see
+     * {@link FuzzyMatcher#subsequenceSpan(String)}. Every folded row is matched with the
+     * bit-parallel matcher, there is no index to narrow the candidates since the text may contain errors.
+     * 
+     * @return The matching rows from the closest match to the farthest. Rows within the edit distance come first, ordered by the distance.
+     */
+    synchronized int[] fuzzySearch(String text) {
+        String query = fold(text);
+        if (query.isEmpty()) {
+            return scan(query);
+        }
+        FuzzyMatcher fuzzyMatcher = new FuzzyMatcher(query);
+        List<int[]> matches = new ArrayList<>();
+        for (int row = 0; row < rowNumber; row++) {
+            String rowText = texts.get(rowSlots[row]);
+            int distance = fuzzyMatcher.distance(rowText);
+            int span = distance > 0 ? fuzzyMatcher.subsequenceSpan(rowText) : query.length();
+            if (distance <= fuzzyMatcher.maxDistance()) {
+                matches.add(new int[] { distance, span, row });
+            } else if (FuzzyMatcher.NO_SUBSEQUENCE != span) {
+                matches.add(new int[] { fuzzyMatcher.maxDistance() + 1, span, row });
+            }
+        }
+        matches.sort(Comparator.<int[]> comparingInt(m -> m[0]).thenComparingInt(m -> m[1]).thenComparingInt(m -> m[2]));
+        int[] rows = new int[matches.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = matches.get(i)[2];
+        }
+        return rows;
+    }
+
+    /**
+     * Returns a predicate which tells whether a row contains the given text. The matches are searched once and again only after the rows were modified, so
+     * testing each row of a table is cheap.
+     */
+    IntPredicate matcher(String text) {
+        return matcher(() -> search(text));
+    }
+
+    /**
+     * Same as {@link #matcher(String)}, but the rows are matched with {@link #fuzzySearch(String)}.
+     */
+    IntPredicate fuzzyMatcher(String text) {
+        return matcher(() -> fuzzySearch(text));
+    }
+
+    private IntPredicate matcher(Supplier<int[]> search) {
+        return new IntPredicate() {
+
+            private long searchedModificationCount = -1;
+
+            private BitSet matches;
+
+            @Override
+            public boolean test(int row) {
+                long currentModificationCount = modificationCount;
+                if (currentModificationCount != searchedModificationCount) {
+                    BitSet rows = new BitSet();
+                    for (int matchedRow : search.get()) {
+                        rows.set(matchedRow);
+                    }
+                    matches = rows;
+                    searchedModificationCount = currentModificationCount;
+                }
+                return matches.get(row);
+            }
+        };
+    }
+
+    private int[] scan(String query) {
+        int[] rows = new int[rowNumber];
+        int count = 0;
+        for (int row = 0; row < rowNumber; row++) {
+            if (texts.get(rowSlots[row]).contains(query)) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private void removeGrams(int slot, String text) {
+        for (long gram : grams(text)) {
+            Postings gramSlots = postings.get(gram);
+            gramSlots.remove(slot);
+            if (0 == gramSlots.size) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the distinct trigrams of a given text in ascending order. The three characters of a trigram are packed in a {@code long}.
+     */
+    private static long[] grams(String text) {
+        if (text.length() < GRAM_LEN) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - GRAM_LEN + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16 | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int count = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (0 == count || grams[count - 1] != grams[i]) {
+                grams[count++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, count);
+    }
+
+    /**
+     * The slots of the rows which contain a trigram in ascending order.
+     */
+    private static final class Postings {
+
+        private int[] slots = new int[2];
+
+        private int size;
+
+        private void add(int slot) {
+            int index = size;
+            if (0 < size && slots[size - 1] > slot) {
+                index = -Arrays.binarySearch(slots, 0, size, slot) - 1;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, 2 * size);
+            }
+            System.arraycopy(slots, index, slots, index + 1, size - index);
+            slots[index] = slot;
+            size++;
+        }
+
+        private void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+            size--;
+        }
+    }
+}
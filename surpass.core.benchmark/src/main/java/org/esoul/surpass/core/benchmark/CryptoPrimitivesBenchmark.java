@@ -0,0 +1,126 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.esoul.surpass.core.jca.CryptoPrimitives;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares encrypting a row sized chunk, computing a key verifier and hashing a secret with engines from {@link CryptoPrimitives} against looking them up
+ * with {@code getInstance} for every operation, which is how {@link org.esoul.surpass.core.SimpleCipher} and the clipboard hash used to work. The pooled
+ * variants include releasing the engine, which re-initializes it with a throwaway key.
+ * 
+ * @author mgp
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CryptoPrimitivesBenchmark {
+
+    private static final String CIPHER_ALGO = "AES/GCM/NoPadding";
+
+    private static final String MAC_ALGO = "HmacSHA256";
+
+    private static final String DIGEST_ALGO = "SHA-256";
+
+    private final SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+
+    private final SecretKeySpec macKey = new SecretKeySpec(new byte[16], MAC_ALGO);
+
+    private final byte[] data = "identifier-note-and-secret-of-a-typical-row".getBytes(StandardCharsets.UTF_8);
+
+    /** GCM refuses to encrypt twice with the same key and nonce, so every encryption takes the next nonce. */
+    private long counter;
+
+    private GCMParameterSpec nextNonce() {
+        return new GCMParameterSpec(128, ByteBuffer.allocate(12).putLong(4, ++counter).array());
+    }
+
+    @Benchmark
+    public byte[] encryptGetInstance() throws Exception {
+        Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
+        cipher.init(Cipher.ENCRYPT_MODE, key, nextNonce());
+        return cipher.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] encryptPooled() throws Exception {
+        Cipher cipher = CryptoPrimitives.cipher(CIPHER_ALGO);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, nextNonce());
+            return cipher.doFinal(data);
+        } finally {
+            CryptoPrimitives.release(cipher);
+        }
+    }
+
+    @Benchmark
+    public byte[] macGetInstance() throws Exception {
+        Mac mac = Mac.getInstance(MAC_ALGO);
+        mac.init(macKey);
+        return mac.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] macPooled() throws Exception {
+        Mac mac = CryptoPrimitives.mac(MAC_ALGO);
+        try {
+            mac.init(macKey);
+            return mac.doFinal(data);
+        } finally {
+            CryptoPrimitives.release(mac);
+        }
+    }
+
+    @Benchmark
+    public byte[] digestGetInstance() throws Exception {
+        return MessageDigest.getInstance(DIGEST_ALGO).digest(data);
+    }
+
+    @Benchmark
+    public byte[] digestPooled() throws Exception {
+        return CryptoPrimitives.messageDigest(DIGEST_ALGO).digest(data);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.esoul.surpass.core.SquareMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SquareMatrix} row reads while many threads read and one thread keeps updating rows. The {@code locked} group reads the same cells under a
+ * single exclusive lock, which is how {@link SquareMatrix} used to serve every read, and serves as a baseline.
+ * 
+ * @author mgp
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SquareMatrixReadBenchmark {
+
+    private static final int ROWS = 200;
+
+    private SquareMatrix squareMatrix;
+
+    private final Lock lock = new ReentrantLock();
+
+    @Setup
+    public void setUp() throws Exception {
+        squareMatrix = new SquareMatrix();
+        for (int i = 0; i < ROWS; i++) {
+            squareMatrix.createRow(("secret" + i).toCharArray(), ("identifier" + i).toCharArray(), ("note" + i).toCharArray());
+        }
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(7)
+    public byte[] optimisticRead() {
+        return squareMatrix.readIdentifier(ThreadLocalRandom.current().nextInt(squareMatrix.getRowNumber()));
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(1)
+    public void optimisticWrite() throws Exception {
+        write();
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(7)
+    public byte[] lockedRead() {
+        lock.lock();
+        try {
+            byte[] row = squareMatrix.getBytes()[ThreadLocalRandom.current().nextInt(ROWS)];
+            return Arrays.copyOfRange(row, SquareMatrix.INDEX_IDENTIFIER, SquareMatrix.INDEX_IDENTIFIER + row[SquareMatrix.INDEX_IDENTIFIER_LEN]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void lockedWrite() throws Exception {
+        lock.lock();
+        try {
+            write();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write() throws Exception {
+        int row = ThreadLocalRandom.current().nextInt(ROWS);
+        squareMatrix.updateRow(row, null, ("identifier" + row).toCharArray(), ("note" + row).toCharArray());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.esoul.surpass.core.ColumnarSecretTable;
+import org.esoul.surpass.core.PagedSecretTable;
+import org.esoul.surpass.core.SquareMatrix;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ColumnarSecretTableTest {
+
+    private ColumnarSecretTable table;
+
+    @BeforeEach
+    public void setUp() {
+        table = new ColumnarSecretTable();
+    }
+
+    @Test
+    public void testCreateBeyondSquareMatrixLimit() throws Exception {
+        int rows = SquareMatrix.MAX_ROW + 10;
+        createRows(table, rows);
+        Assertions.assertEquals(rows, table.getRowNumber());
+        for (int row = 0; row < rows; row++) {
+            checkRow(row, row);
+        }
+    }
+
+    @Test
+    public void testRowOverflow() throws Exception {
+        createRows(table, PagedSecretTable.MAX_ROW);
+        Assertions.assertThrows(MaxSizeExceededException.class, () -> table.createRow("GG".toCharArray(), "PP".toCharArray(), "AA".toCharArray()));
+    }
+
+    @Test
+    public void testLoadPagedSecretTable() throws Exception {
+        PagedSecretTable pagedSecretTable = new PagedSecretTable();
+        createRows(pagedSecretTable, PagedSecretTable.ROWS_PER_PAGE + 1);
+        table.load(pagedSecretTable.toOneDimension());
+        Assertions.assertEquals(PagedSecretTable.ROWS_PER_PAGE + 1, table.getRowNumber());
+        for (int row = 0; row < PagedSecretTable.ROWS_PER_PAGE + 1; row++) {
+            checkRow(row, row);
+        }
+
+        PagedSecretTable loaded = new PagedSecretTable();
+        loaded.load(table.toOneDimension());
+        Assertions.assertEquals(PagedSecretTable.ROWS_PER_PAGE + 1, loaded.getRowNumber());
+        Assertions.assertArrayEquals("id64".getBytes(UTF_8), loaded.readIdentifier(PagedSecretTable.ROWS_PER_PAGE));
+    }
+
+    @Test
+    public void testLoadSquareMatrix() throws Exception {
+        SquareMatrix squareMatrix = new SquareMatrix();
+        createRows(squareMatrix, 3);
+        table.load(squareMatrix.toOneDimension());
+        Assertions.assertEquals(3, table.getRowNumber());
+        for (int row = 0; row < 3; row++) {
+            checkRow(row, row);
+        }
+    }
+
+    @Test
+    public void testRemoveAndUpdateRows() throws Exception {
+        createRows(table, 3);
+        table.removeRow(0);
+        Assertions.assertEquals(2, table.getRowNumber());
+        checkRow(0, 1);
+        checkRow(1, 2);
+        table.updateRow(1, null, "id-upd".toCharArray(), "note-upd".toCharArray());
+        Assertions.assertArrayEquals("secret2".getBytes(UTF_8), table.readSecret(1));
+        Assertions.assertArrayEquals("id-upd".getBytes(UTF_8), table.readIdentifier(1));
+        Assertions.assertArrayEquals("note-upd".getBytes(UTF_8), table.readNote(1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> table.readSecret(2));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        createRows(table, 3);
+        try (SecretTableSnapshot snapshot = table.snapshot()) {
+            table.removeRow(0);
+            table.updateRow(0, "GG".toCharArray(), "PP".toCharArray(), "AA".toCharArray());
+            createRows(table, PagedSecretTable.ROWS_PER_PAGE);
+
+            Assertions.assertEquals(3, snapshot.getRowNumber());
+            Assertions.assertArrayEquals("secret0".getBytes(UTF_8), snapshot.readSecret(0));
+            Assertions.assertArrayEquals("id1".getBytes(UTF_8), snapshot.readIdentifier(1));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> snapshot.readNote(3));
+
+            PagedSecretTable loaded = new PagedSecretTable();
+            loaded.load(snapshot.toOneDimension());
+            Assertions.assertEquals(3, loaded.getRowNumber());
+            Assertions.assertArrayEquals("note2".getBytes(UTF_8), loaded.readNote(2));
+        }
+    }
+
+    @Test
+    public void testReadInto() throws Exception {
+        createRows(table, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(PagedSecretTable.ROW_LEN);
+        Assertions.assertEquals(7, table.readSecretInto(1, buffer));
+        Assertions.assertEquals(3, table.readIdentifierInto(1, buffer));
+        Assertions.assertEquals(5, table.readNoteInto(1, buffer));
+        buffer.flip();
+        Assertions.assertEquals("secret1id1note1", UTF_8.decode(buffer).toString());
+        Assertions.assertEquals(3, table.getIdentifierLength(0));
+        Assertions.assertEquals(5, table.getNoteLength(0));
+    }
+
+    @Test
+    public void testApplyBatch() throws Exception {
+        createRows(table, 2);
+        table.applyBatch(List.of(new RowMutation.Remove(0), new RowMutation.Create("GG".toCharArray(), "PP".toCharArray(), "AA".toCharArray()),
+                new RowMutation.Update(0, null, "id-upd".toCharArray(), "note-upd".toCharArray())));
+        Assertions.assertEquals(2, table.getRowNumber());
+        Assertions.assertArrayEquals("secret1".getBytes(UTF_8), table.readSecret(0));
+        Assertions.assertArrayEquals("id-upd".getBytes(UTF_8), table.readIdentifier(0));
+        Assertions.assertArrayEquals("PP".getBytes(UTF_8), table.readIdentifier(1));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.applyBatch(List.of(new RowMutation.Remove(0), new RowMutation.Remove(1))));
+        Assertions.assertEquals(2, table.getRowNumber());
+    }
+
+    private void createRows(SecretTable secretTable, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            secretTable.createRow(("secret" + i).toCharArray(), ("id" + i).toCharArray(), ("note" + i).toCharArray());
+        }
+    }
+
+    private void checkRow(int row, int expected) {
+        Assertions.assertArrayEquals(("secret" + expected).getBytes(UTF_8), table.readSecret(row));
+        Assertions.assertArrayEquals(("id" + expected).getBytes(UTF_8), table.readIdentifier(row));
+        Assertions.assertArrayEquals(("note" + expected).getBytes(UTF_8), table.readNote(row));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.esoul.surpass.core.jca.CryptoPrimitives;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CryptoPrimitivesTest {
+
+    private static final byte[] INPUT = "AAAA".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testCipherPerThread() throws Exception {
+        Cipher cipher = CryptoPrimitives.cipher("AES/GCM/NoPadding");
+        Assertions.assertSame(cipher, CryptoPrimitives.cipher("AES/GCM/NoPadding"));
+        Assertions.assertNotSame(cipher, CryptoPrimitives.cipher("AESWrap"));
+        Assertions.assertNotSame(cipher, CompletableFuture.supplyAsync(() -> {
+            try {
+                return CryptoPrimitives.cipher("AES/GCM/NoPadding");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get());
+    }
+
+    @Test
+    public void testReleaseCipher() throws Exception {
+        byte[] nonce = new byte[12];
+        Cipher cipher = CryptoPrimitives.cipher("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), "AES"), new GCMParameterSpec(128, nonce));
+        cipher.doFinal(INPUT);
+        CryptoPrimitives.release(cipher);
+        CryptoPrimitives.release(cipher);
+        Assertions.assertSame(cipher, CryptoPrimitives.cipher("AES/GCM/NoPadding"));
+        Assertions.assertFalse(MessageDigest.isEqual(nonce, cipher.getIV()));
+    }
+
+    @Test
+    public void testReleaseMac() throws Exception {
+        Mac mac = CryptoPrimitives.mac("HmacSHA256");
+        mac.init(new SecretKeySpec("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), "HmacSHA256"));
+        CryptoPrimitives.release(mac);
+        Assertions.assertSame(mac, CryptoPrimitives.mac("HmacSHA256"));
+        Mac throwaway = Mac.getInstance("HmacSHA256");
+        throwaway.init(new SecretKeySpec(new byte[16], "HmacSHA256"));
+        Assertions.assertArrayEquals(throwaway.doFinal(INPUT), mac.doFinal(INPUT));
+    }
+
+    @Test
+    public void testMessageDigestReset() throws Exception {
+        MessageDigest messageDigest = CryptoPrimitives.messageDigest("SHA-256");
+        messageDigest.update(INPUT);
+        Assertions.assertSame(messageDigest, CryptoPrimitives.messageDigest("SHA-256"));
+        Assertions.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(INPUT), CryptoPrimitives.messageDigest("SHA-256").digest(INPUT));
+    }
+}
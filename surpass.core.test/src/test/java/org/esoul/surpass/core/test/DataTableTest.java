@@ -1,24 +1,31 @@
 package org.esoul.surpass.core.test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import org.esoul.surpass.core.SquareMatrix;
 import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 public class DataTableTest {
 
-    private byte[][] bytes;
     private SquareMatrix dt;
 
     @BeforeEach
     public void setUp() {
         dt = new SquareMatrix();
-        bytes = dt.getBytes();
     }
 
     @Test
@@ -55,7 +62,7 @@ public class DataTableTest {
     }
 
     private void checkCellData(char[] input, int indexRow, int indexDataLen, int indexData) {
-        byte[] row = bytes[indexRow];
+        byte[] row = dt.getBytes()[indexRow];
         checkData(row, input, indexDataLen, indexData);
     }
 
@@ -117,6 +124,24 @@ public class DataTableTest {
         checkRowInSequence(sequence, 2, secret2, identifier2, note2);
     }
 
+    @Test
+    public void testRandomPadding() throws Exception {
+        dt.createRow("AAA".toCharArray(), "BBB".toCharArray(), "CCC".toCharArray());
+        byte[] sequence = dt.toOneDimension();
+        byte[] otherSequence = dt.toOneDimension();
+        checkRowInSequence(sequence, 0, "AAA".toCharArray(), "BBB".toCharArray(), "CCC".toCharArray());
+        checkRowInSequence(otherSequence, 0, "AAA".toCharArray(), "BBB".toCharArray(), "CCC".toCharArray());
+        // The padding is generated for each serialization.
+        Assertions.assertFalse(Arrays.equals(Arrays.copyOfRange(sequence, SquareMatrix.INDEX_NOTE + 3, SquareMatrix.MAX_COL + 1),
+                Arrays.copyOfRange(otherSequence, SquareMatrix.INDEX_NOTE + 3, SquareMatrix.MAX_COL + 1)));
+        int lastRowOffset = (SquareMatrix.SERVICE_ROW - 1) * (SquareMatrix.MAX_COL + 1);
+        byte[] lastRow = Arrays.copyOfRange(sequence, lastRowOffset, lastRowOffset + SquareMatrix.MAX_COL + 1);
+        Assertions.assertFalse(Arrays.equals(new byte[SquareMatrix.MAX_COL + 1], lastRow));
+        // Nothing but the service data is in the service row.
+        Assertions.assertArrayEquals(dt.getBytes()[SquareMatrix.SERVICE_ROW],
+                Arrays.copyOfRange(sequence, SquareMatrix.SERVICE_ROW * (SquareMatrix.MAX_COL + 1), sequence.length));
+    }
+
     private void checkRowInSequence(byte[] sequence, int row, char[] secret, char[] identifier, char[] note) {
         int rowOffset = row * (SquareMatrix.MAX_COL + 1);
         checkData(sequence, secret, rowOffset + SquareMatrix.INDEX_SECRET_LEN, rowOffset + SquareMatrix.INDEX_SECRET);
@@ -158,10 +183,11 @@ public class DataTableTest {
     }
 
     private void checkServiceRow(int expectedFirstFreeRow) {
-        Assertions.assertEquals((byte) 0, bytes[SquareMatrix.SERVICE_ROW][0]);
-        Assertions.assertEquals((byte) expectedFirstFreeRow, bytes[SquareMatrix.SERVICE_ROW][1]);
-        for (int i = 2; i < bytes[SquareMatrix.SERVICE_ROW].length; i++) {
-            Assertions.assertEquals((byte) 0, bytes[SquareMatrix.SERVICE_ROW][i]);
+        byte[] serviceRow = dt.getBytes()[SquareMatrix.SERVICE_ROW];
+        Assertions.assertEquals((byte) 0, serviceRow[0]);
+        Assertions.assertEquals((byte) expectedFirstFreeRow, serviceRow[1]);
+        for (int i = 2; i < serviceRow.length; i++) {
+            Assertions.assertEquals((byte) 0, serviceRow[i]);
         }
     }
 
@@ -216,7 +242,7 @@ public class DataTableTest {
     }
 
     private byte[] encode(char[] data) {
-        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(data)).array();
+        return new String(data).getBytes(StandardCharsets.UTF_8);
     }
 
     @Test
@@ -257,6 +283,28 @@ public class DataTableTest {
         Assertions.assertTrue(Arrays.equals(encode(note1), dt.readNote(0)));
     }
 
+    @Test
+    public void testReadAfterRemoval() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            dt.createRow(("s" + i).toCharArray(), ("id" + i).toCharArray(), ("n" + i).toCharArray());
+        }
+        dt.removeRow(1);
+
+        // Row indices are logical, so the rows after a removed one move up and the last index no longer exists.
+        Assertions.assertTrue(Arrays.equals(encode("id2".toCharArray()), dt.readIdentifier(1)));
+        Assertions.assertTrue(Arrays.equals(encode("s3".toCharArray()), dt.readSecret(2)));
+        Assertions.assertEquals(2, dt.getNoteLength(2));
+        ByteBuffer dst = ByteBuffer.allocate(SquareMatrix.MAX_SECRET_LEN);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.readSecret(3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.readIdentifier(3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.readNote(3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.readSecretInto(3, dst));
+        Assertions.assertEquals(0, dst.position());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.getIdentifierLength(3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.updateRow(3, null, "id".toCharArray(), "n".toCharArray()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dt.removeRow(3));
+    }
+
     @Test
     public void testUpdateRows() throws Exception {
         char[] secret0 = "AAA".toCharArray();
@@ -290,4 +338,236 @@ public class DataTableTest {
         Assertions.assertTrue(Arrays.equals(encode(identifier2), dt.readIdentifier(2)));
         Assertions.assertTrue(Arrays.equals(encode(note2), dt.readNote(2)));
     }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        dt.createRow("AAA".toCharArray(), "BBB".toCharArray(), "CCC".toCharArray());
+        byte[] first = encode("BBB".toCharArray());
+        byte[] second = encode("B-longer".toCharArray());
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<byte[]> inconsistentRead = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                while (!done.get()) {
+                    byte[] identifier = dt.readIdentifier(0);
+                    if (!Arrays.equals(first, identifier) && !Arrays.equals(second, identifier)) {
+                        inconsistentRead.set(identifier);
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < 20_000; i++) {
+            dt.updateRow(0, null, (0 == i % 2 ? "B-longer" : "BBB").toCharArray(), "CCC".toCharArray());
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assertions.assertNull(inconsistentRead.get());
+    }
+
+    @Test
+    public void testConcurrentRemoveAndLengthReads() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            dt.createRow("AAA".toCharArray(), "BBBB".toCharArray(), "CCCCC".toCharArray());
+        }
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    while (!done.get()) {
+                        if (3 != dt.getSecretLength(0) || 4 != dt.getIdentifierLength(0) || 5 != dt.getNoteLength(0)) {
+                            failure.set(new AssertionError("Inconsistent length"));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }));
+        }
+        // Every removal leaves a tombstone, so compaction runs many times.
+        for (int i = 0; i < 20_000; i++) {
+            dt.removeRow(0);
+            dt.createRow("AAA".toCharArray(), "BBBB".toCharArray(), "CCCCC".toCharArray());
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assertions.assertNull(failure.get());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        dt.createRow("AAA".toCharArray(), "BBB".toCharArray(), "CCC".toCharArray());
+        dt.createRow("DDD".toCharArray(), "EEE".toCharArray(), "FFF".toCharArray());
+        try (SecretTableSnapshot snapshot = dt.snapshot()) {
+            dt.updateRow(0, "GGG".toCharArray(), "HHH".toCharArray(), "III".toCharArray());
+            dt.removeRow(1);
+            dt.createRow("JJJ".toCharArray(), "KKK".toCharArray(), "LLL".toCharArray());
+
+            Assertions.assertEquals(2, snapshot.getRowNumber());
+            Assertions.assertTrue(Arrays.equals(encode("AAA".toCharArray()), snapshot.readSecret(0)));
+            Assertions.assertTrue(Arrays.equals(encode("EEE".toCharArray()), snapshot.readIdentifier(1)));
+            SquareMatrix loaded = new SquareMatrix();
+            loaded.load(snapshot.toOneDimension());
+            Assertions.assertEquals(2, loaded.getRowNumber());
+            Assertions.assertTrue(Arrays.equals(encode("BBB".toCharArray()), loaded.readIdentifier(0)));
+            Assertions.assertTrue(Arrays.equals(encode("FFF".toCharArray()), loaded.readNote(1)));
+        }
+        Assertions.assertEquals(2, dt.getRowNumber());
+        Assertions.assertTrue(Arrays.equals(encode("HHH".toCharArray()), dt.readIdentifier(0)));
+        Assertions.assertTrue(Arrays.equals(encode("KKK".toCharArray()), dt.readIdentifier(1)));
+    }
+
+    @Test
+    public void testReadInto() throws Exception {
+        dt.createRow("AAA".toCharArray(), "BBBB".toCharArray(), "CCCCC".toCharArray());
+        ByteBuffer buffer = ByteBuffer.allocate(SquareMatrix.MAX_NOTE_LEN);
+        Assertions.assertEquals(3, dt.readSecretInto(0, buffer));
+        Assertions.assertEquals(4, dt.readIdentifierInto(0, buffer));
+        Assertions.assertEquals(5, dt.readNoteInto(0, buffer));
+        buffer.flip();
+        Assertions.assertEquals(CharBuffer.wrap("AAABBBBCCCCC"), StandardCharsets.UTF_8.decode(buffer));
+
+        Assertions.assertEquals(3, dt.getSecretLength(0));
+        Assertions.assertEquals(4, dt.getIdentifierLength(0));
+        Assertions.assertEquals(5, dt.getNoteLength(0));
+
+        ByteBuffer small = ByteBuffer.allocate(4);
+        Assertions.assertThrows(BufferOverflowException.class, () -> dt.readNoteInto(0, small));
+        Assertions.assertEquals(0, small.position());
+    }
+
+    @Test
+    public void testRemoveRowsWithTombstones() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < SquareMatrix.MAX_ROW; i++) {
+            dt.createRow(("s" + i).toCharArray(), ("id" + i).toCharArray(), ("n" + i).toCharArray());
+            expected.add("id" + i);
+        }
+        // Fewer than the compaction threshold, so the rows stay in their slots.
+        for (int row = 10; row > 0; row--) {
+            dt.removeRow(2 * row);
+            expected.remove(2 * row);
+        }
+        checkIdentifiers(dt, expected);
+
+        // The table is full, so the dead slots are reused.
+        dt.createRow("s".toCharArray(), "id-new".toCharArray(), "n".toCharArray());
+        expected.add("id-new");
+        checkIdentifiers(dt, expected);
+
+        // Enough to trigger compaction.
+        for (int i = 0; i < 100; i++) {
+            dt.removeRow(0);
+            expected.remove(0);
+        }
+        checkIdentifiers(dt, expected);
+
+        SquareMatrix loaded = new SquareMatrix();
+        loaded.load(dt.toOneDimension());
+        checkIdentifiers(loaded, expected);
+    }
+
+    @Test
+    public void testApplyBatch() throws Exception {
+        List<RowMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < SquareMatrix.MAX_ROW; i++) {
+            mutations.add(new RowMutation.Create(("s" + i).toCharArray(), ("id" + i).toCharArray(), ("n" + i).toCharArray()));
+        }
+        dt.applyBatch(mutations);
+        Assertions.assertEquals(SquareMatrix.MAX_ROW, dt.getRowNumber());
+
+        // Removing first makes room for the new row.
+        dt.applyBatch(List.of(new RowMutation.Remove(0), new RowMutation.Update(0, null, "id-upd".toCharArray(), "n".toCharArray()),
+                new RowMutation.Create("s".toCharArray(), "id-new".toCharArray(), "n".toCharArray())));
+        Assertions.assertEquals(SquareMatrix.MAX_ROW, dt.getRowNumber());
+        Assertions.assertTrue(Arrays.equals(encode("s1".toCharArray()), dt.readSecret(0)));
+        Assertions.assertTrue(Arrays.equals(encode("id-upd".toCharArray()), dt.readIdentifier(0)));
+        Assertions.assertTrue(Arrays.equals(encode("id-new".toCharArray()), dt.readIdentifier(SquareMatrix.MAX_ROW - 1)));
+
+        // Nothing is applied if the batch exceeds the maximum number of rows or contains invalid input.
+        char[] identifier = "id-x".toCharArray();
+        Assertions.assertThrows(MaxSizeExceededException.class, () -> dt.applyBatch(List.of(new RowMutation.Remove(0),
+                new RowMutation.Create("s".toCharArray(), identifier, "n".toCharArray()),
+                new RowMutation.Create("s".toCharArray(), "id".toCharArray(), "n".toCharArray()))));
+        Assertions.assertArrayEquals(new char[identifier.length], identifier);
+        Assertions.assertThrows(MaxSizeExceededException.class, () -> dt.applyBatch(List.of(new RowMutation.Remove(0),
+                new RowMutation.Create(generateData(SquareMatrix.MAX_SECRET_LEN + 1), "id".toCharArray(), "n".toCharArray()))));
+        Assertions.assertEquals(SquareMatrix.MAX_ROW, dt.getRowNumber());
+        Assertions.assertTrue(Arrays.equals(encode("id-upd".toCharArray()), dt.readIdentifier(0)));
+    }
+
+    @Test
+    public void testFindRowsByIdentifier() throws Exception {
+        byte[] longIdentifier = "shared identifier".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 64; i++) {
+            char[] identifier = 0 == i % 2 ? "shared identifier".toCharArray() : ("id" + i).toCharArray();
+            dt.createRow("s".toCharArray(), identifier, "n".toCharArray());
+        }
+        Assertions.assertArrayEquals(new int[] { 0, 2, 4 }, Arrays.copyOf(dt.findRowsByIdentifier(longIdentifier), 3));
+        Assertions.assertArrayEquals(new int[] { 1 }, dt.findRowsByIdentifier(encode("id1".toCharArray())));
+        Assertions.assertEquals(0, dt.findRowsByIdentifier(encode("none".toCharArray())).length);
+
+        // Removing enough rows compacts the table, the index keeps following the row numbers.
+        for (int i = 0; i < 32; i++) {
+            dt.removeRow(0);
+        }
+        Assertions.assertArrayEquals(new int[] { 0, 2 }, Arrays.copyOf(dt.findRowsByIdentifier(longIdentifier), 2));
+        Assertions.assertArrayEquals(new int[] { 1 }, dt.findRowsByIdentifier(encode("id33".toCharArray())));
+
+        dt.updateRow(0, null, "id-upd".toCharArray(), "n".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0 }, dt.findRowsByIdentifier(encode("id-upd".toCharArray())));
+        Assertions.assertArrayEquals(new int[] { 2 }, Arrays.copyOf(dt.findRowsByIdentifier(longIdentifier), 1));
+
+        SquareMatrix loaded = new SquareMatrix();
+        loaded.load(dt.toOneDimension());
+        Assertions.assertArrayEquals(dt.findRowsByIdentifier(longIdentifier), loaded.findRowsByIdentifier(longIdentifier));
+        loaded.close();
+        Assertions.assertEquals(0, loaded.findRowsByIdentifier(longIdentifier).length);
+    }
+
+    @Test
+    public void testFindRowsByIdentifierWithManyRemovals() throws Exception {
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < SquareMatrix.MAX_ROW - 1; i++) {
+            identifiers.add("id" + i % 7);
+            dt.createRow("s".toCharArray(), identifiers.getLast().toCharArray(), "n".toCharArray());
+        }
+        // Removals leave tombstones and compact the table every now and then, creates reuse the slots freed by compaction.
+        for (int i = 0; i < 3 * SquareMatrix.MAX_ROW; i++) {
+            int row = (i * 31) % identifiers.size();
+            if (0 == i % 2) {
+                identifiers.add("id" + i % 11);
+                dt.createRow("s".toCharArray(), identifiers.getLast().toCharArray(), "n".toCharArray());
+            } else {
+                identifiers.remove(row);
+                dt.removeRow(row);
+            }
+            if (0 == i % 17) {
+                checkFindRows(identifiers);
+            }
+        }
+        checkFindRows(identifiers);
+    }
+
+    private void checkFindRows(List<String> identifiers) {
+        for (int id = 0; id < 11; id++) {
+            String identifier = "id" + id;
+            int[] expected = IntStream.range(0, identifiers.size()).filter(row -> identifiers.get(row).equals(identifier)).toArray();
+            Assertions.assertArrayEquals(expected, dt.findRowsByIdentifier(identifier.getBytes(StandardCharsets.UTF_8)), identifier);
+        }
+    }
+
+    private void checkIdentifiers(SquareMatrix secretTable, List<String> expected) {
+        Assertions.assertEquals(expected.size(), secretTable.getRowNumber());
+        for (int row = 0; row < expected.size(); row++) {
+            Assertions.assertEquals(expected.get(row), new String(secretTable.readIdentifier(row), StandardCharsets.UTF_8));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> secretTable.readIdentifier(expected.size()));
+    }
 }
@@ -0,0 +1,193 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+
+import org.esoul.surpass.core.PagedSecretTable;
+import org.esoul.surpass.core.SquareMatrix;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PagedSecretTableTest {
+
+    private PagedSecretTable table;
+
+    @BeforeEach
+    public void setUp() {
+        table = new PagedSecretTable();
+    }
+
+    @Test
+    public void testCreateBeyondSquareMatrixLimit() throws Exception {
+        int rows = SquareMatrix.MAX_ROW + 10;
+        createRows(rows);
+        Assertions.assertEquals(rows, table.getRowNumber());
+        for (int row = 0; row < rows; row++) {
+            checkRow(row, row);
+        }
+    }
+
+    @Test
+    public void testRowOverflow() throws Exception {
+        createRows(PagedSecretTable.MAX_ROW);
+        Assertions.assertThrows(MaxSizeExceededException.class, () -> table.createRow("GG".toCharArray(), "PP".toCharArray(), "AA".toCharArray()));
+    }
+
+    @Test
+    public void testSizeBuckets() throws Exception {
+        Assertions.assertEquals(PagedSecretTable.HEADER_LEN + PagedSecretTable.MIN_PAGES * PagedSecretTable.PAGE_LEN, table.toOneDimension().length);
+        createRows(PagedSecretTable.MIN_PAGES * PagedSecretTable.ROWS_PER_PAGE);
+        Assertions.assertEquals(PagedSecretTable.HEADER_LEN + PagedSecretTable.MIN_PAGES * PagedSecretTable.PAGE_LEN, table.toOneDimension().length);
+        createRows(1);
+        Assertions.assertEquals(PagedSecretTable.HEADER_LEN + 2 * PagedSecretTable.MIN_PAGES * PagedSecretTable.PAGE_LEN, table.toOneDimension().length);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        int rows = SquareMatrix.MAX_ROW + 10;
+        createRows(rows);
+        byte[] sequence = table.toOneDimension();
+
+        PagedSecretTable loaded = new PagedSecretTable();
+        loaded.load(sequence);
+        Assertions.assertEquals(rows, loaded.getRowNumber());
+        table = loaded;
+        for (int row = 0; row < rows; row++) {
+            checkRow(row, row);
+        }
+    }
+
+    @Test
+    public void testLoadSquareMatrix() throws Exception {
+        SquareMatrix squareMatrix = new SquareMatrix();
+        for (int i = 0; i < 3; i++) {
+            squareMatrix.createRow(("secret" + i).toCharArray(), ("id" + i).toCharArray(), ("note" + i).toCharArray());
+        }
+        table.load(squareMatrix.toOneDimension());
+        Assertions.assertEquals(3, table.getRowNumber());
+        for (int row = 0; row < 3; row++) {
+            checkRow(row, row);
+        }
+    }
+
+    @Test
+    public void testLoadInvalid() throws Exception {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> table.load(new byte[PagedSecretTable.HEADER_LEN + 1]));
+    }
+
+    @Test
+    public void testRemoveRows() throws Exception {
+        int rows = PagedSecretTable.ROWS_PER_PAGE + 1;
+        createRows(rows);
+        table.removeRow(0);
+        Assertions.assertEquals(rows - 1, table.getRowNumber());
+        for (int row = 0; row < rows - 1; row++) {
+            checkRow(row, row + 1);
+        }
+        table.removeRow(rows - 2);
+        Assertions.assertEquals(rows - 2, table.getRowNumber());
+        checkRow(rows - 3, rows - 2);
+    }
+
+    @Test
+    public void testUpdateRows() throws Exception {
+        createRows(PagedSecretTable.ROWS_PER_PAGE + 1);
+        table.updateRow(PagedSecretTable.ROWS_PER_PAGE, null, "id-upd".toCharArray(), "note-upd".toCharArray());
+        Assertions.assertArrayEquals(("secret" + PagedSecretTable.ROWS_PER_PAGE).getBytes(UTF_8), table.readSecret(PagedSecretTable.ROWS_PER_PAGE));
+        Assertions.assertArrayEquals("id-upd".getBytes(UTF_8), table.readIdentifier(PagedSecretTable.ROWS_PER_PAGE));
+        Assertions.assertArrayEquals("note-upd".getBytes(UTF_8), table.readNote(PagedSecretTable.ROWS_PER_PAGE));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.updateRow(PagedSecretTable.ROWS_PER_PAGE + 1, null, "id".toCharArray(), "note".toCharArray()));
+    }
+
+
+    @Test
+    public void testReadInto() throws Exception {
+        createRows(2);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PagedSecretTable.ROW_LEN);
+        Assertions.assertEquals(7, table.readSecretInto(1, buffer));
+        Assertions.assertEquals(3, table.readIdentifierInto(1, buffer));
+        Assertions.assertEquals(5, table.readNoteInto(1, buffer));
+        buffer.flip();
+        Assertions.assertEquals("secret1id1note1", UTF_8.decode(buffer).toString());
+        Assertions.assertEquals(3, table.getIdentifierLength(0));
+        Assertions.assertEquals(5, table.getNoteLength(0));
+    }
+    @Test
+    public void testFindRowsByIdentifier() throws Exception {
+        int rows = PagedSecretTable.ROWS_PER_PAGE + 1;
+        createRows(rows);
+        table.updateRow(rows - 1, null, "id0".toCharArray(), "note".toCharArray());
+        Assertions.assertArrayEquals(new int[] { 0, rows - 1 }, table.findRowsByIdentifier("id0".getBytes(UTF_8)));
+        table.removeRow(0);
+        Assertions.assertArrayEquals(new int[] { rows - 2 }, table.findRowsByIdentifier("id0".getBytes(UTF_8)));
+        Assertions.assertArrayEquals(new int[] { 0 }, table.findRowsByIdentifier("id1".getBytes(UTF_8)));
+        Assertions.assertEquals(0, table.findRowsByIdentifier(("id" + (rows - 1)).getBytes(UTF_8)).length);
+
+        PagedSecretTable loaded = new PagedSecretTable();
+        loaded.load(table.toOneDimension());
+        Assertions.assertArrayEquals(new int[] { rows - 2 }, loaded.findRowsByIdentifier("id0".getBytes(UTF_8)));
+    }
+
+    private void createRows(int count) throws Exception {
+        int first = table.getRowNumber();
+        for (int i = first; i < first + count; i++) {
+            table.createRow(("secret" + i).toCharArray(), ("id" + i).toCharArray(), ("note" + i).toCharArray());
+        }
+    }
+
+    private void checkRow(int row, int expected) {
+        Assertions.assertArrayEquals(("secret" + expected).getBytes(UTF_8), table.readSecret(row));
+        Assertions.assertArrayEquals(("id" + expected).getBytes(UTF_8), table.readIdentifier(row));
+        Assertions.assertArrayEquals(("note" + expected).getBytes(UTF_8), table.readNote(row));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        int rows = PagedSecretTable.ROWS_PER_PAGE + 1;
+        createRows(rows);
+        try (SecretTableSnapshot snapshot = table.snapshot()) {
+            table.removeRow(0);
+            table.updateRow(0, "GG".toCharArray(), "PP".toCharArray(), "AA".toCharArray());
+            createRows(PagedSecretTable.ROWS_PER_PAGE);
+
+            Assertions.assertEquals(rows, snapshot.getRowNumber());
+            Assertions.assertArrayEquals("id0".getBytes(UTF_8), snapshot.readIdentifier(0));
+            Assertions.assertArrayEquals(("note" + (rows - 1)).getBytes(UTF_8), snapshot.readNote(rows - 1));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> snapshot.readSecret(rows));
+
+            PagedSecretTable loaded = new PagedSecretTable();
+            loaded.load(snapshot.toOneDimension());
+            Assertions.assertEquals(rows, loaded.getRowNumber());
+            table = loaded;
+            for (int row = 0; row < rows; row++) {
+                checkRow(row, row);
+            }
+        }
+    }
+}
@@ -1,9 +1,24 @@
 package org.esoul.surpass.core.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.util.Arrays;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.esoul.surpass.core.SimpleCipher;
 import org.junit.jupiter.api.Assertions;
@@ -15,7 +30,12 @@ public class SimpleCipherTest {
 
     private static final char[] KEY = "123".toCharArray();
 
-    private static final int EXPECTED_CIPHER_TEXT_LEN = SimpleCipher.VERSION_LEN + SimpleCipher.SALT_LEN + SimpleCipher.IV_LEN + 16;
+    private static final int HEADER_LEN = SimpleCipher.VERSION_LEN + SimpleCipher.SALT_LEN + SimpleCipher.IV_LEN + SimpleCipher.VERIFIER_LEN
+            + SimpleCipher.WRAPPED_KEY_LEN + 2 * Integer.BYTES;
+
+    private static final int TAG_LEN = 16;
+
+    private static final int EXPECTED_CIPHER_TEXT_LEN = HEADER_LEN + CLEAR_TEXT.length + TAG_LEN;
 
     private SimpleCipher cipher = new SimpleCipher();
 
@@ -31,11 +51,203 @@ public class SimpleCipherTest {
         Assertions.assertTrue(Arrays.equals(CLEAR_TEXT, data), "Incorrect decryption!");
     }
 
+    @Test
+    public void testEncryptDecryptBuffers() throws Exception {
+        ByteBuffer data = ByteBuffer.allocateDirect(CLEAR_TEXT.length + 2).put((byte) 1).put(CLEAR_TEXT).put((byte) 2);
+        data.position(1).limit(1 + CLEAR_TEXT.length);
+        ByteBuffer cipherInput = cipher.encrypt(KEY, data);
+        Assertions.assertFalse(data.hasRemaining());
+        Assertions.assertTrue(cipherInput.isDirect());
+        Assertions.assertEquals(EXPECTED_CIPHER_TEXT_LEN, cipherInput.remaining());
+
+        byte[] cipherInputArray = new byte[cipherInput.remaining()];
+        cipherInput.duplicate().get(cipherInputArray);
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, cipherInputArray));
+        ByteBuffer clearText = cipher.decrypt(KEY, cipherInput);
+        Assertions.assertTrue(clearText.isDirect());
+        Assertions.assertEquals(ByteBuffer.wrap(CLEAR_TEXT), clearText);
+    }
+
+    @Test
+    public void testEncryptDecryptChannels() throws Exception {
+        byte[] data = new byte[200_000];
+        Arrays.fill(data, (byte) 'A');
+        ByteArrayOutputStream cipherInput = new ByteArrayOutputStream();
+        cipher.encrypt(KEY, Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(cipherInput));
+        Assertions.assertArrayEquals(data, cipher.decrypt(KEY, cipherInput.toByteArray()));
+
+        ByteArrayOutputStream clearText = new ByteArrayOutputStream();
+        cipher.decrypt(KEY, Channels.newChannel(new ByteArrayInputStream(cipher.encrypt(KEY, data))), Channels.newChannel(clearText));
+        Assertions.assertArrayEquals(data, clearText.toByteArray());
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        byte[] data = data(SimpleCipher.CHUNK_LEN * 4 + 100);
+        byte[] cipherInput = cipher.encrypt(KEY, data);
+        Assertions.assertEquals(HEADER_LEN + data.length + 5 * TAG_LEN, cipherInput.length);
+        Assertions.assertArrayEquals(data, cipher.decrypt(KEY, cipherInput));
+
+        int offset = SimpleCipher.CHUNK_LEN - 10;
+        ByteBuffer range = cipher.decrypt(KEY, ByteBuffer.wrap(cipherInput), offset, SimpleCipher.CHUNK_LEN + 20);
+        Assertions.assertEquals(ByteBuffer.wrap(data, offset, SimpleCipher.CHUNK_LEN + 20), range);
+        Assertions.assertEquals(0, cipher.decrypt(KEY, ByteBuffer.wrap(cipherInput), data.length, 0).remaining());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> cipher.decrypt(KEY, ByteBuffer.wrap(cipherInput), data.length - 1, 2));
+    }
+
+    @Test
+    public void testChunksTampered() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, data(SimpleCipher.CHUNK_LEN * 2));
+        byte[] truncated = Arrays.copyOf(cipherInput, HEADER_LEN + SimpleCipher.CHUNK_LEN + TAG_LEN);
+        Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, truncated));
+
+        cipherInput[HEADER_LEN + SimpleCipher.CHUNK_LEN + TAG_LEN + 1] ^= 1;
+        Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, cipherInput));
+        Assertions.assertEquals(10, cipher.decrypt(KEY, ByteBuffer.wrap(cipherInput), 0, 10).remaining());
+    }
+
+    @Test
+    public void testDecryptTruncated() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, CLEAR_TEXT);
+        for (int length : new int[] { HEADER_LEN, HEADER_LEN + TAG_LEN - 1 }) {
+            byte[] truncated = Arrays.copyOf(cipherInput, length);
+            Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, truncated));
+            Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, ByteBuffer.wrap(truncated), 0, 0));
+        }
+    }
+
+    @Test
+    public void testDecryptExtended() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, data(SimpleCipher.CHUNK_LEN * 2));
+        byte[] extendedByTag = Arrays.copyOf(cipherInput, cipherInput.length + TAG_LEN);
+        Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, extendedByTag));
+        Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, ByteBuffer.wrap(extendedByTag), 0, 10));
+        // A whole chunk has a valid length, but the chunk before it was encrypted as the last one.
+        byte[] extendedByChunk = Arrays.copyOf(cipherInput, cipherInput.length + SimpleCipher.CHUNK_LEN + TAG_LEN);
+        Assertions.assertThrows(AEADBadTagException.class, () -> cipher.decrypt(KEY, extendedByChunk));
+    }
+
     @Test
     public void testDecryptNegative() throws Exception {
         Assertions.assertThrows(BadPaddingException.class, () -> cipher.decrypt("103".toCharArray(), cipher.encrypt(KEY, CLEAR_TEXT)));
     }
 
+    @Test
+    public void testDecryptPbeCipherText() throws Exception {
+        byte[] salt = new byte[SimpleCipher.SALT_LEN];
+        byte[] iv = new byte[SimpleCipher.IV_LEN];
+        Arrays.fill(iv, (byte) 7);
+        Cipher pbeCipher = Cipher.getInstance("PBEWithHmacSHA512AndAES_128");
+        pbeCipher.init(Cipher.ENCRYPT_MODE, SecretKeyFactory.getInstance("PBEWithHmacSHA512AndAES_128").generateSecret(new PBEKeySpec(KEY)),
+                new PBEParameterSpec(salt, 100, new IvParameterSpec(iv)));
+        byte[] cipherText = pbeCipher.doFinal(CLEAR_TEXT);
+        byte[] cipherInput = new byte[SimpleCipher.VERSION_LEN + salt.length + iv.length + cipherText.length];
+        System.arraycopy(iv, 0, cipherInput, SimpleCipher.VERSION_LEN + salt.length, iv.length);
+        System.arraycopy(cipherText, 0, cipherInput, SimpleCipher.VERSION_LEN + salt.length + iv.length, cipherText.length);
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, cipherInput));
+    }
+
+    @Test
+    public void testDecryptEnvelopeCipherText() throws Exception {
+        byte[] salt = data(SimpleCipher.SALT_LEN);
+        byte[] iv = new byte[SimpleCipher.IV_LEN];
+        SecretKey derivedKey = new SecretKeySpec(
+                SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512").generateSecret(new PBEKeySpec(KEY, salt, 100, 128)).getEncoded(), "AES");
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(derivedKey);
+        byte[] verifier = Arrays.copyOf(mac.doFinal("org.esoul.surpass.key.verifier".getBytes(StandardCharsets.US_ASCII)), SimpleCipher.VERIFIER_LEN);
+        SecretKey dataKey = new SecretKeySpec(data(16), "AES");
+        Cipher keyWrapCipher = Cipher.getInstance("AESWrap");
+        keyWrapCipher.init(Cipher.WRAP_MODE, derivedKey);
+        Cipher aesCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        aesCipher.init(Cipher.ENCRYPT_MODE, dataKey, new IvParameterSpec(iv));
+        byte[] cipherInput = ByteBuffer.allocate(HEADER_LEN - 2 * Integer.BYTES + aesCipher.getOutputSize(CLEAR_TEXT.length)).put(SimpleCipher.VERSION_ENVELOPE)
+                .put(salt).put(iv).put(verifier).put(keyWrapCipher.wrap(dataKey)).put(aesCipher.doFinal(CLEAR_TEXT)).array();
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, cipherInput));
+        Assertions.assertTrue(cipher.verifyKey(KEY, cipher.getKeyVerifier(cipherInput)));
+
+        byte[] changed = cipher.changeKey(KEY, KEY, cipherInput);
+        Assertions.assertEquals(SimpleCipher.VERSION_ENVELOPE, changed[0]);
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, changed));
+    }
+
+    @Test
+    public void testHeaderAuthenticated() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, data(SimpleCipher.CHUNK_LEN * 2));
+        byte[] chunkLengthChanged = cipherInput.clone();
+        ByteBuffer.wrap(chunkLengthChanged).putInt(HEADER_LEN - 2 * Integer.BYTES, SimpleCipher.CHUNK_LEN / 2);
+        Assertions.assertThrows(BadPaddingException.class, () -> cipher.decrypt(KEY, chunkLengthChanged));
+        Assertions.assertFalse(cipher.verifyKey(KEY, cipher.getKeyVerifier(chunkLengthChanged)));
+
+        byte[] downgraded = cipherInput.clone();
+        downgraded[0] = SimpleCipher.VERSION_CALIBRATED;
+        Assertions.assertThrows(BadPaddingException.class, () -> cipher.decrypt(KEY, downgraded));
+        Assertions.assertThrows(BadPaddingException.class, () -> cipher.changeKey(KEY, KEY, downgraded));
+    }
+
+    @Test
+    public void testVerifyKey() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, CLEAR_TEXT);
+        Assertions.assertEquals(SimpleCipher.VERSION_SUBKEYS, cipherInput[0]);
+        byte[] keyVerifier = cipher.getKeyVerifier(cipherInput);
+        Assertions.assertTrue(cipher.verifyKey(KEY, keyVerifier));
+        Assertions.assertFalse(cipher.verifyKey("103".toCharArray(), keyVerifier));
+        Assertions.assertTrue(new SimpleCipher().verifyKey(KEY, keyVerifier));
+
+        cipherInput[0] = SimpleCipher.VERSION_PBE;
+        Assertions.assertNull(cipher.getKeyVerifier(cipherInput));
+    }
+
+    @Test
+    public void testChangeKey() throws Exception {
+        char[] newKey = "abc".toCharArray();
+        byte[] cipherInput = cipher.encrypt(KEY, CLEAR_TEXT);
+        byte[] changed = cipher.changeKey(KEY, newKey, cipherInput);
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(newKey, changed));
+        Assertions.assertThrows(BadPaddingException.class, () -> cipher.decrypt(KEY, changed));
+        Assertions.assertThrows(BadPaddingException.class, () -> cipher.changeKey("103".toCharArray(), newKey, cipherInput));
+        Assertions.assertArrayEquals(Arrays.copyOfRange(cipherInput, HEADER_LEN, cipherInput.length), Arrays.copyOfRange(changed, HEADER_LEN, changed.length));
+    }
+
+    @Test
+    public void testCalibrateIterationCount() throws Exception {
+        byte[] cipherInput = new SimpleCipher(Duration.ofMillis(20)).encrypt(KEY, CLEAR_TEXT);
+        int iterations = ByteBuffer.wrap(cipherInput).getInt(HEADER_LEN - Integer.BYTES);
+        Assertions.assertTrue(iterations >= 100, "Unexpected iteration count " + iterations);
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, cipherInput));
+        Assertions.assertTrue(cipher.verifyKey(KEY, cipher.getKeyVerifier(cipherInput)));
+
+        byte[] changed = cipher.changeKey(KEY, KEY, cipherInput);
+        Assertions.assertEquals(100, ByteBuffer.wrap(changed).getInt(HEADER_LEN - Integer.BYTES));
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, changed));
+
+        ByteBuffer.wrap(cipherInput).putInt(HEADER_LEN - Integer.BYTES, 0);
+        Assertions.assertThrows(GeneralSecurityException.class, () -> cipher.decrypt(KEY, cipherInput));
+    }
+
+    @Test
+    public void testRejectExcessiveIterationCount() throws Exception {
+        byte[] cipherInput = cipher.encrypt(KEY, CLEAR_TEXT);
+        ByteBuffer.wrap(cipherInput).putInt(HEADER_LEN - Integer.BYTES, Integer.MAX_VALUE);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            Assertions.assertThrows(GeneralSecurityException.class, () -> cipher.decrypt(KEY, cipherInput));
+            Assertions.assertThrows(GeneralSecurityException.class, () -> cipher.changeKey(KEY, KEY, cipherInput));
+            Assertions.assertThrows(GeneralSecurityException.class, () -> cipher.verifyKey(KEY, cipher.getKeyVerifier(cipherInput)));
+        });
+    }
+
+    @Test
+    public void testFreshSaltPerEncryption() throws Exception {
+        byte[] first = cipher.encrypt(KEY, CLEAR_TEXT);
+        byte[] second = cipher.encrypt(KEY, CLEAR_TEXT);
+        Assertions.assertFalse(Arrays.equals(salt(first), salt(second)));
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, first));
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, second));
+
+        cipher.clearKeys();
+        Assertions.assertArrayEquals(CLEAR_TEXT, cipher.decrypt(KEY, first));
+    }
+
     @Test
     public void testDigest() throws Exception {
         char[] digest = cipher.digest("AAAA".toCharArray());
@@ -43,4 +255,16 @@ public class SimpleCipherTest {
                 "53b74be8b295b733fdfafbd7d2a22b1686733740de7fdc592b26cf3e1874cfce158170ce9230e24696331a61829244e5d9f48abdacc9ffa8c4cb498724844cf8",
                 new String(digest));
     }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static byte[] salt(byte[] cipherInput) {
+        return Arrays.copyOfRange(cipherInput, SimpleCipher.VERSION_LEN, SimpleCipher.VERSION_LEN + SimpleCipher.SALT_LEN);
+    }
 }
@@ -20,7 +20,10 @@
    SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 
+import org.esoul.surpass.core.ColumnarSecretTable;
 import org.esoul.surpass.core.DefaultContextAwareCryptoServiceFactory;
+import org.esoul.surpass.core.OffHeapSecretTable;
+import org.esoul.surpass.core.PagedSecretTable;
 import org.esoul.surpass.core.SecretGenerator;
 import org.esoul.surpass.core.SimpleCipher;
 import org.esoul.surpass.core.SquareMatrix;
@@ -34,9 +37,10 @@ module surpass.core {
     requires transitive surpass.api;
 
     exports org.esoul.surpass.core;
+    exports org.esoul.surpass.core.jca to surpass.gui, surpass.core.test;
 
     provides CryptoService with SimpleCipher;
     provides ContextAwareCryptoServiceAbstractFactory with DefaultContextAwareCryptoServiceFactory;
-    provides SecretTable with SquareMatrix;
+    provides SecretTable with SquareMatrix, PagedSecretTable, OffHeapSecretTable, ColumnarSecretTable;
     provides RandomSecretService with SecretGenerator;
 }
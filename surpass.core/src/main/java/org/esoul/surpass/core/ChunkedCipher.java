@@ -0,0 +1,256 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.esoul.surpass.core.jca.CryptoPrimitives;
+
+/**
+ * Encrypts data in fixed size chunks, each with AES-GCM and its own authentication tag. The nonce of a chunk is a prefix of the IV, the index of the chunk
+ * and a flag which is set only for the last chunk, so chunks cannot be reordered, dropped or appended without failing the authentication. The chunk length is
+ * authenticated as associated data. Whole buffers are processed in parallel on the common {@link java.util.concurrent.ForkJoinPool} and single chunks can be
+ * decrypted without the others.
+ *
+ * @author mgp
+ */
+final class ChunkedCipher {
+
+    static final int TAG_LEN = 16;
+
+    private static final String CIPHER_ALGO = "AES/GCM/NoPadding";
+
+    private static final int NONCE_PREFIX_LEN = 7;
+
+    private static final int NONCE_LEN = 12;
+
+    private final SecretKey key;
+
+    private final byte[] noncePrefix;
+
+    private final int chunkLength;
+
+    private final byte[] associatedData;
+
+    /**
+     * @param key The data key.
+     * @param iv A random IV of at least {@value #NONCE_PREFIX_LEN} bytes.
+     * @param chunkLength The length of the clear text of a chunk.
+     */
+    ChunkedCipher(SecretKey key, byte[] iv, int chunkLength) {
+        this.key = key;
+        this.noncePrefix = Arrays.copyOf(iv, NONCE_PREFIX_LEN);
+        this.chunkLength = chunkLength;
+        this.associatedData = ByteBuffer.allocate(Integer.BYTES).putInt(chunkLength).array();
+    }
+
+    int cipherTextLength(int clearTextLength) {
+        return clearTextLength + chunkCount(clearTextLength) * TAG_LEN;
+    }
+
+    /**
+     * Returns the length of the clear text of a cipher text. Only lengths which {@link #cipherTextLength(int)} can produce are accepted, so a cipher text with
+     * a truncated last chunk or with bytes appended after it is rejected before any chunk is decrypted.
+     */
+    int clearTextLength(int cipherTextLength) throws GeneralSecurityException {
+        int chunkCount = (cipherTextLength + chunkLength + TAG_LEN - 1) / (chunkLength + TAG_LEN);
+        int clearTextLength = cipherTextLength - chunkCount * TAG_LEN;
+        if (clearTextLength < 0 || cipherTextLength != cipherTextLength(clearTextLength)) {
+            throw new AEADBadTagException("The cipher text is truncated or extended!");
+        }
+        return clearTextLength;
+    }
+
+    /**
+     * Encrypts the remaining bytes of the clear text into the cipher text buffer, which needs {@link #cipherTextLength(int)} remaining bytes. Both buffers are
+     * advanced.
+     */
+    void encrypt(ByteBuffer clearText, ByteBuffer cipherText) throws GeneralSecurityException {
+        int input = clearText.position();
+        int output = cipherText.position();
+        int length = clearText.remaining();
+        int chunkCount = chunkCount(length);
+        forEachChunk(0, chunkCount, index -> {
+            int offset = index * chunkLength;
+            int chunk = Math.min(chunkLength, length - offset);
+            process(Cipher.ENCRYPT_MODE, index, index == chunkCount - 1, clearText.slice(input + offset, chunk),
+                    cipherText.slice(output + offset + index * TAG_LEN, chunk + TAG_LEN));
+        });
+        clearText.position(clearText.limit());
+        cipherText.position(output + length + chunkCount * TAG_LEN);
+    }
+
+    /**
+     * Decrypts the remaining bytes of the cipher text into the clear text buffer, which needs {@link #clearTextLength(int)} remaining bytes. Both buffers are
+     * advanced.
+     */
+    void decrypt(ByteBuffer cipherText, ByteBuffer clearText) throws GeneralSecurityException {
+        int length = clearTextLength(cipherText.remaining());
+        decrypt(cipherText, clearText, 0, chunkCount(length), length);
+        cipherText.position(cipherText.limit());
+        clearText.position(clearText.position() + length);
+    }
+
+    /**
+     * Decrypts only the chunks which hold the given range of the clear text.
+     *
+     * @param cipherText The whole cipher text between the position and the limit, which is not advanced.
+     * @return The clear text of the range.
+     */
+    ByteBuffer decrypt(ByteBuffer cipherText, long offset, int length) throws GeneralSecurityException {
+        int clearTextLength = clearTextLength(cipherText.remaining());
+        if (offset < 0 || length < 0 || offset + length > clearTextLength) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is out of " + clearTextLength);
+        }
+        if (0 == length) {
+            return ByteBuffer.allocate(0);
+        }
+        int first = (int) (offset / chunkLength);
+        int last = (int) ((offset + length - 1) / chunkLength);
+        int firstOffset = first * chunkLength;
+        ByteBuffer clearText = ByteBuffer.allocate(Math.min(clearTextLength, (last + 1) * chunkLength) - firstOffset);
+        decrypt(cipherText, clearText, first, last + 1, clearTextLength);
+        return clearText.slice((int) (offset - firstOffset), length);
+    }
+
+    /**
+     * Encrypts everything read from the source one chunk at a time. One more chunk is read ahead to know which chunk is the last.
+     */
+    void encrypt(ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        transform(Cipher.ENCRYPT_MODE, source, target, chunkLength, chunkLength + TAG_LEN);
+    }
+
+    void decrypt(ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        transform(Cipher.DECRYPT_MODE, source, target, chunkLength + TAG_LEN, chunkLength);
+    }
+
+    private void decrypt(ByteBuffer cipherText, ByteBuffer clearText, int from, int to, int clearTextLength) throws GeneralSecurityException {
+        int input = cipherText.position();
+        int output = clearText.position();
+        int chunkCount = chunkCount(clearTextLength);
+        forEachChunk(from, to, index -> {
+            int offset = index * chunkLength;
+            int chunk = Math.min(chunkLength, clearTextLength - offset);
+            process(Cipher.DECRYPT_MODE, index, index == chunkCount - 1, cipherText.slice(input + offset + index * TAG_LEN, chunk + TAG_LEN),
+                    clearText.slice(output + offset - from * chunkLength, chunk));
+        });
+    }
+
+    private void transform(int mode, ReadableByteChannel source, WritableByteChannel target, int inputLength, int outputLength)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer current = ByteBuffer.allocateDirect(inputLength);
+        ByteBuffer next = ByteBuffer.allocateDirect(inputLength);
+        ByteBuffer output = ByteBuffer.allocateDirect(outputLength);
+        boolean end = fill(source, current);
+        for (int index = 0;; index++) {
+            if (!end) {
+                end = fill(source, next);
+            }
+            boolean last = 0 == next.position();
+            process(mode, index, last, current.flip(), output.clear());
+            output.flip();
+            while (output.hasRemaining()) {
+                target.write(output);
+            }
+            if (last) {
+                return;
+            }
+            ByteBuffer swap = current;
+            current = next;
+            next = swap.clear();
+        }
+    }
+
+    private void process(int mode, int index, boolean last, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        Cipher cipher = CryptoPrimitives.cipher(CIPHER_ALGO);
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_LEN * Byte.SIZE, nonce(index, last)));
+            cipher.updateAAD(associatedData);
+            cipher.doFinal(input, output);
+        } finally {
+            CryptoPrimitives.release(cipher);
+        }
+    }
+
+    private byte[] nonce(int index, boolean last) {
+        return ByteBuffer.allocate(NONCE_LEN).put(noncePrefix).putInt(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private int chunkCount(int clearTextLength) {
+        return Math.max(1, (clearTextLength + chunkLength - 1) / chunkLength);
+    }
+
+    /**
+     * Reads until the buffer is full or the channel ends.
+     *
+     * @return Whether the channel ended.
+     */
+    private static boolean fill(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (-1 == source.read(buffer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void forEachChunk(int from, int to, ChunkOperation operation) throws GeneralSecurityException {
+        try {
+            IntStream.range(from, to).parallel().forEach(index -> {
+                try {
+                    operation.process(index);
+                } catch (GeneralSecurityException e) {
+                    throw new ChunkException(e);
+                }
+            });
+        } catch (ChunkException e) {
+            throw (GeneralSecurityException) e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkOperation {
+
+        void process(int index) throws GeneralSecurityException;
+    }
+
+    /** Carries a checked exception out of a parallel stream. */
+    private static final class ChunkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private ChunkException(GeneralSecurityException cause) {
+            super(cause);
+        }
+    }
+}
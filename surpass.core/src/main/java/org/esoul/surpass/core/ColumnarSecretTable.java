@@ -0,0 +1,467 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.esoul.surpass.table.api.EmptySequenceException;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
+
+/**
+ * This {@link SecretTable} implementation keeps each column in an array of its own instead of interleaving the columns in rows. Scanning the identifiers or the
+ * notes, e.g. to search or filter, reads a single contiguous array and does not touch the secrets at all. Each entry of a column is the length byte followed
+ * by the data and zeroes up to the maximum length of the column of the {@link SquareMatrix} storage scheme:
+ * 
+ * <pre>
+ * secrets:     [secret length - 1 byte][secret - up to 63 bytes]...
+ * identifiers: [identifier length - 1 byte][identifier - up to 63 bytes]...
+ * notes:       [note length - 1 byte][note - up to 127 bytes]...
+ * </pre>
+ * 
+ * The one dimensional form is the one of {@link PagedSecretTable}, the rows are put together and the unused positions are filled with random bytes on
+ * serialization. The columns grow by doubling. Snapshots share the columns with the table, they are copied only when the table is modified after a snapshot was
+ * taken. This class is thread-safe.
+ *
+ * @author mgp
+ */
+public class ColumnarSecretTable implements SecretTable {
+
+    private static final int SECRETS = 0;
+
+    private static final int IDENTIFIERS = 1;
+
+    private static final int NOTES = 2;
+
+    /** The length of an entry of each column. */
+    private static final int[] STRIDES = { 1 + SquareMatrix.MAX_SECRET_LEN, 1 + SquareMatrix.MAX_IDENTIFIER_LEN, 1 + SquareMatrix.MAX_NOTE_LEN };
+
+    /** The index of the length byte of each column in a row of the one dimensional form. */
+    private static final int[] ROW_INDICES = { SquareMatrix.INDEX_SECRET_LEN, SquareMatrix.INDEX_IDENTIFIER_LEN, SquareMatrix.INDEX_NOTE_LEN };
+
+    private final byte[][] columns = { new byte[0], new byte[0], new byte[0] };
+
+    private int rowNumber = 0;
+
+    /** Set by a snapshot, the columns are shared with it and are copied before they are modified. */
+    private boolean shared;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final Lock lock = new ReentrantLock();
+
+    private final IdentifierIndex identifierIndex = new IdentifierIndex();
+
+    @Override
+    public void createRow(char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        byte[] secretBytes = RowCodec.encodeAndClear(secret);
+        RowCodec.validateSecret(secretBytes);
+        byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+        RowCodec.validateIdentifier(identifierBytes);
+        byte[] noteBytes = RowCodec.encodeAndClear(note);
+        RowCodec.validateNote(noteBytes);
+        lock.lock();
+        try {
+            writeRow(nextRow(), secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateRow(int row, char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        lock.lock();
+        try {
+            checkRow(row);
+
+            byte[] secretBytes = null;
+            if (null != secret) {
+                secretBytes = RowCodec.encodeAndClear(secret);
+                RowCodec.validateSecret(secretBytes);
+            }
+            byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+            RowCodec.validateIdentifier(identifierBytes);
+            byte[] noteBytes = RowCodec.encodeAndClear(note);
+            RowCodec.validateNote(noteBytes);
+
+            writeRow(row, secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the cells of a given row. The secret is not written if it is {@code null}.
+     */
+    private void writeRow(int row, byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) {
+        unshare();
+        if (null != secretBytes) {
+            writeCell(SECRETS, row, secretBytes);
+        }
+        writeCell(IDENTIFIERS, row, identifierBytes);
+        writeCell(NOTES, row, noteBytes);
+        identifierIndex.put(row, identifierBytes);
+    }
+
+    /**
+     * Writes the length byte followed by the data and zeroes the rest of the entry, so nothing of a previous value remains.
+     */
+    private void writeCell(int column, int row, byte[] bytes) {
+        byte[] entries = columns[column];
+        int offset = row * STRIDES[column];
+        entries[offset] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, entries, offset + 1, bytes.length);
+        Arrays.fill(entries, offset + 1 + bytes.length, offset + STRIDES[column], (byte) 0);
+    }
+
+    @Override
+    public void applyBatch(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException {
+        List<EncodedMutation> encodedMutations = EncodedMutation.encodeAll(mutations);
+        lock.lock();
+        try {
+            EncodedMutation.checkRows(encodedMutations, rowNumber, PagedSecretTable.MAX_ROW);
+            for (EncodedMutation encodedMutation : encodedMutations) {
+                switch (encodedMutation.mutation()) {
+                    case RowMutation.Create _ -> writeRow(nextRow(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Update update -> writeRow(update.row(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Remove remove -> deleteRow(remove.row());
+                }
+            }
+        } finally {
+            lock.unlock();
+            EncodedMutation.wipe(encodedMutations);
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowNumber) {
+            throw new IllegalArgumentException("Nonexistent row " + row);
+        }
+    }
+
+    private int nextRow() throws MaxSizeExceededException {
+        if (rowNumber >= PagedSecretTable.MAX_ROW) {
+            throw new MaxSizeExceededException("Maximum number of secrets reached! " + rowNumber);
+        }
+        if (rowNumber == capacity()) {
+            ensureCapacity(Math.max(PagedSecretTable.ROWS_PER_PAGE, 2 * capacity()));
+        }
+        return rowNumber++;
+    }
+
+    private int capacity() {
+        return columns[SECRETS].length / STRIDES[SECRETS];
+    }
+
+    /**
+     * Moves the columns to new arrays which can hold the given number of rows. The old arrays are wiped unless they are shared with a snapshot.
+     */
+    private void ensureCapacity(int capacity) {
+        for (int column = 0; column < columns.length; column++) {
+            byte[] entries = Arrays.copyOf(columns[column], capacity * STRIDES[column]);
+            if (!shared) {
+                Arrays.fill(columns[column], (byte) 0);
+            }
+            columns[column] = entries;
+        }
+        shared = false;
+    }
+
+    /**
+     * Copies the columns if they are shared with a snapshot.
+     */
+    private void unshare() {
+        if (shared) {
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = columns[column].clone();
+            }
+            shared = false;
+        }
+    }
+
+    @Override
+    public int[] findRowsByIdentifier(byte[] identifier) {
+        lock.lock();
+        try {
+            return identifierIndex.find(identifier);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] copyCell(byte[] entries, int stride, int row) {
+        int offset = row * stride;
+        return Arrays.copyOfRange(entries, offset + 1, offset + 1 + entries[offset]);
+    }
+
+    private byte[] readCell(int column, int row) {
+        lock.lock();
+        try {
+            checkRow(row);
+            return copyCell(columns[column], STRIDES[column], row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readCellInto(int column, int row, ByteBuffer dst) {
+        lock.lock();
+        try {
+            checkRow(row);
+            byte[] entries = columns[column];
+            int offset = row * STRIDES[column];
+            dst.put(entries, offset + 1, entries[offset]);
+            return entries[offset];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readLength(int column, int row) {
+        lock.lock();
+        try {
+            checkRow(row);
+            return columns[column][row * STRIDES[column]];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeRow(int row) {
+        lock.lock();
+        try {
+            checkRow(row);
+            deleteRow(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Shifts the following entries of each column with a single copy and zeroes the freed last entry.
+     */
+    private void deleteRow(int row) {
+        identifierIndex.remove(row);
+        identifierIndex.compact();
+        unshare();
+        for (int column = 0; column < columns.length; column++) {
+            byte[] entries = columns[column];
+            int stride = STRIDES[column];
+            System.arraycopy(entries, (row + 1) * stride, entries, row * stride, (rowNumber - row - 1) * stride);
+            Arrays.fill(entries, (rowNumber - 1) * stride, rowNumber * stride, (byte) 0);
+        }
+        rowNumber--;
+    }
+
+    @Override
+    public int getRowNumber() {
+        lock.lock();
+        try {
+            return rowNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxRow() {
+        return PagedSecretTable.MAX_ROW;
+    }
+
+    @Override
+    public byte[] readSecret(int row) {
+        return readCell(SECRETS, row);
+    }
+
+    @Override
+    public byte[] readIdentifier(int row) {
+        return readCell(IDENTIFIERS, row);
+    }
+
+    @Override
+    public byte[] readNote(int row) {
+        return readCell(NOTES, row);
+    }
+
+    @Override
+    public int readSecretInto(int row, ByteBuffer dst) {
+        return readCellInto(SECRETS, row, dst);
+    }
+
+    @Override
+    public int readIdentifierInto(int row, ByteBuffer dst) {
+        return readCellInto(IDENTIFIERS, row, dst);
+    }
+
+    @Override
+    public int readNoteInto(int row, ByteBuffer dst) {
+        return readCellInto(NOTES, row, dst);
+    }
+
+    @Override
+    public int getSecretLength(int row) {
+        return readLength(SECRETS, row);
+    }
+
+    @Override
+    public int getIdentifierLength(int row) {
+        return readLength(IDENTIFIERS, row);
+    }
+
+    @Override
+    public int getNoteLength(int row) {
+        return readLength(NOTES, row);
+    }
+
+    /**
+     * Shares the columns with the snapshot, they are copied lazily by the next writer.
+     */
+    @Override
+    public SecretTableSnapshot snapshot() {
+        lock.lock();
+        try {
+            shared = true;
+            return new Snapshot(columns.clone(), rowNumber, secureRandom);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] toOneDimension() {
+        try (SecretTableSnapshot snapshot = snapshot()) {
+            return snapshot.toOneDimension();
+        }
+    }
+
+    @Override
+    public void load(byte[] sequence) {
+        int loadedRowNumber = PagedSecretTable.readRowNumber(sequence);
+        int rowsOffset = PagedSecretTable.rowsOffset(sequence);
+        lock.lock();
+        try {
+            clear();
+            ensureCapacity(PagedSecretTable.pagesFor(loadedRowNumber) * PagedSecretTable.ROWS_PER_PAGE);
+            for (int row = 0; row < loadedRowNumber; row++) {
+                for (int column = 0; column < columns.length; column++) {
+                    int sequenceIndex = rowsOffset + row * PagedSecretTable.ROW_LEN + ROW_INDICES[column];
+                    System.arraycopy(sequence, sequenceIndex, columns[column], row * STRIDES[column], STRIDES[column]);
+                }
+            }
+            rowNumber = loadedRowNumber;
+            identifierIndex.load(sequence, rowsOffset, loadedRowNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wipes the columns unless they are shared with a snapshot and drops them.
+     */
+    private void clear() {
+        for (int column = 0; column < columns.length; column++) {
+            if (!shared) {
+                Arrays.fill(columns[column], (byte) 0);
+            }
+            columns[column] = new byte[0];
+        }
+        rowNumber = 0;
+        shared = false;
+        identifierIndex.clear();
+    }
+
+    private static final class Snapshot implements SecretTableSnapshot {
+
+        private final byte[][] columns;
+
+        private final int rowNumber;
+
+        private final SecureRandom secureRandom;
+
+        private Snapshot(byte[][] columns, int rowNumber, SecureRandom secureRandom) {
+            this.columns = columns;
+            this.rowNumber = rowNumber;
+            this.secureRandom = secureRandom;
+        }
+
+        @Override
+        public int getRowNumber() {
+            return rowNumber;
+        }
+
+        @Override
+        public byte[] readSecret(int row) {
+            return readCell(SECRETS, row);
+        }
+
+        @Override
+        public byte[] readIdentifier(int row) {
+            return readCell(IDENTIFIERS, row);
+        }
+
+        @Override
+        public byte[] readNote(int row) {
+            return readCell(NOTES, row);
+        }
+
+        private byte[] readCell(int column, int row) {
+            if (row < 0 || row >= rowNumber) {
+                throw new IllegalArgumentException("Nonexistent row " + row);
+            }
+            return copyCell(columns[column], STRIDES[column], row);
+        }
+
+        /**
+         * Puts the rows together. Only the used part of each entry is copied, the rest of the sequence keeps its random bytes.
+         */
+        @Override
+        public byte[] toOneDimension() {
+            byte[] sequence = PagedSecretTable.allocateSequence(rowNumber, PagedSecretTable.pagesFor(rowNumber), secureRandom);
+            for (int row = 0; row < rowNumber; row++) {
+                for (int column = 0; column < columns.length; column++) {
+                    int offset = row * STRIDES[column];
+                    int sequenceIndex = PagedSecretTable.HEADER_LEN + row * PagedSecretTable.ROW_LEN + ROW_INDICES[column];
+                    System.arraycopy(columns[column], offset, sequence, sequenceIndex, 1 + columns[column][offset]);
+                }
+            }
+            return sequence;
+        }
+    }
+}
@@ -34,10 +34,16 @@ public final class ConfigurationProperties {
 
     public static final String ITERATION_COUNT = "org.esoul.surpass.pbe.iteration.count";
 
+    public static final String KDF_TARGET = "org.esoul.surpass.pbe.kdf.target";
+
     public static final String SALT_LEN = "org.esoul.surpass.pbe.salt.len";
 
     public static final String IV_LEN = "org.esoul.surpass.pbe.iv.len";
 
+    public static final String KEY_CACHE_TTL = "org.esoul.surpass.pbe.key.cache.ttl";
+
+    public static final String CHUNK_LEN = "org.esoul.surpass.chunk.len";
+
     private ConfigurationProperties() {
         // do nothing
     }
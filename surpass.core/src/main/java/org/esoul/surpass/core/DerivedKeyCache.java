@@ -0,0 +1,230 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.io.NotSerializableException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.esoul.surpass.core.jca.CryptoPrimitives;
+
+/**
+ * A bounded cache of keys derived from passwords, so that repeated encryption and decryption with the same password, salt and iteration count skip the key
+ * derivation function. Entries expire a fixed time after they were derived and the least recently used entry is evicted when the cache is full. The key
+ * material of evicted entries is zeroed. The keys handed out are views of the cached key material rather than copies, so zeroing an entry leaves no copy
+ * behind, and a view of an evicted entry refuses to give out its key. Passwords are not kept, entries are looked up by a MAC of the password with a random
+ * key which never leaves this instance.
+ *
+ * @author mgp
+ */
+final class DerivedKeyCache {
+
+    static final int MAX_ENTRIES = 8;
+
+    private static final String MAC_ALGO = "HmacSHA256";
+
+    private final String kdfAlgorithm;
+
+    private final int keyLength;
+
+    private final String keyAlgorithm;
+
+    private final long ttlNanos;
+
+    private final Mac passwordMac;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    /**
+     * @param kdfAlgorithm The {@link SecretKeyFactory} algorithm which derives the keys, e.g. PBKDF2WithHmacSHA512.
+     * @param keyLength The length of the derived keys in bits.
+     * @param keyAlgorithm The algorithm of the derived keys, e.g. AES.
+     * @param ttl How long a derived key is kept.
+     */
+    DerivedKeyCache(String kdfAlgorithm, int keyLength, String keyAlgorithm, Duration ttl) {
+        this.kdfAlgorithm = kdfAlgorithm;
+        this.keyLength = keyLength;
+        this.keyAlgorithm = keyAlgorithm;
+        this.ttlNanos = ttl.toNanos();
+        byte[] macKey = new byte[32];
+        new SecureRandom().nextBytes(macKey);
+        try {
+            passwordMac = Mac.getInstance(MAC_ALGO);
+            passwordMac.init(new SecretKeySpec(macKey, MAC_ALGO));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Arrays.fill(macKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Returns the key derived from the given password, salt and iteration count. The key is derived only if it is not cached already. The key is a view of the
+     * cache entry, use it right away and do not keep it.
+     */
+    synchronized SecretKey get(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+        evictExpired();
+        Key key = new Key(mac(password), ByteBuffer.wrap(salt.clone()), iterations);
+        Entry entry = entries.get(key);
+        if (null == entry) {
+            entry = new Entry(derive(password, salt, iterations), keyAlgorithm, System.nanoTime() + ttlNanos);
+            entries.put(key, entry);
+            if (entries.size() > MAX_ENTRIES) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next().wipe();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Zeroes and removes all keys.
+     */
+    synchronized void clear() {
+        entries.values().forEach(Entry::wipe);
+        entries.clear();
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> {
+            if (now - entry.expiresAt >= 0) {
+                entry.wipe();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private ByteBuffer mac(char[] password) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        try {
+            passwordMac.update(encoded);
+            return ByteBuffer.wrap(passwordMac.doFinal());
+        } finally {
+            Arrays.fill(encoded.array(), (byte) 0);
+        }
+    }
+
+    private byte[] derive(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec pbeKeySpec = new PBEKeySpec(password, salt, iterations, keyLength);
+        try {
+            SecretKey derived = CryptoPrimitives.secretKeyFactory(kdfAlgorithm).generateSecret(pbeKeySpec);
+            try {
+                return derived.getEncoded();
+            } finally {
+                destroy(derived);
+            }
+        } finally {
+            pbeKeySpec.clearPassword();
+        }
+    }
+
+    private static void destroy(Destroyable key) {
+        try {
+            key.destroy();
+        } catch (DestroyFailedException _) {
+            // The provider cannot destroy its keys on demand, e.g. the JDK one wipes them only when they are no longer reachable.
+        }
+    }
+
+    private record Key(ByteBuffer passwordMac, ByteBuffer salt, int iterations) {
+    }
+
+    /**
+     * A cached key, which is also the view of itself handed out by {@link DerivedKeyCache#get(char[], byte[], int)}. Only the cache can destroy it.
+     */
+    private static final class Entry implements SecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient byte[] keyMaterial;
+
+        private final String algorithm;
+
+        private final transient long expiresAt;
+
+        private volatile transient boolean destroyed;
+
+        private Entry(byte[] keyMaterial, String algorithm, long expiresAt) {
+            this.keyMaterial = keyMaterial;
+            this.algorithm = algorithm;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Returns a copy of the key material, which JCA providers wipe once they have set up their key schedule.
+         */
+        @Override
+        public byte[] getEncoded() {
+            byte[] encoded = keyMaterial.clone();
+            if (destroyed) {
+                Arrays.fill(encoded, (byte) 0);
+                throw new IllegalStateException("The key has been evicted from the cache!");
+            }
+            return encoded;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+
+        private void wipe() {
+            destroyed = true;
+            Arrays.fill(keyMaterial, (byte) 0);
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            throw new NotSerializableException(DerivedKeyCache.class.getName());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.esoul.surpass.table.api.EmptySequenceException;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+
+/**
+ * A {@link RowMutation} with its input encoded and validated. Used by the {@link org.esoul.surpass.table.api.SecretTable#applyBatch(List)} implementations in
+ * this module to do everything that can fail before the table is modified. The cells which are not changed by the mutation are {@code null}.
+ *
+ * @author mgp
+ */
+record EncodedMutation(RowMutation mutation, byte[] secret, byte[] identifier, byte[] note) {
+
+    /**
+     * Encodes and validates all mutations, clearing their input. Nothing is returned if any of them is invalid.
+     */
+    static List<EncodedMutation> encodeAll(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException {
+        List<EncodedMutation> encodedMutations = new ArrayList<>(mutations.size());
+        try {
+            for (RowMutation mutation : mutations) {
+                encodedMutations.add(encode(mutation));
+            }
+        } catch (Exception e) {
+            wipe(encodedMutations);
+            throw e;
+        }
+        return encodedMutations;
+    }
+
+    private static EncodedMutation encode(RowMutation mutation) throws MaxSizeExceededException, EmptySequenceException {
+        return switch (mutation) {
+            case RowMutation.Create create -> new EncodedMutation(mutation, encodeSecret(create.secret()), encodeIdentifier(create.identifier()),
+                    encodeNote(create.note()));
+            case RowMutation.Update update -> new EncodedMutation(mutation, null != update.secret() ? encodeSecret(update.secret()) : null,
+                    encodeIdentifier(update.identifier()), encodeNote(update.note()));
+            case RowMutation.Remove _ -> new EncodedMutation(mutation, null, null, null);
+        };
+    }
+
+    private static byte[] encodeSecret(char[] secret) throws MaxSizeExceededException, EmptySequenceException {
+        byte[] secretBytes = RowCodec.encodeAndClear(secret);
+        RowCodec.validateSecret(secretBytes);
+        return secretBytes;
+    }
+
+    private static byte[] encodeIdentifier(char[] identifier) throws MaxSizeExceededException, EmptySequenceException {
+        byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+        RowCodec.validateIdentifier(identifierBytes);
+        return identifierBytes;
+    }
+
+    private static byte[] encodeNote(char[] note) throws MaxSizeExceededException {
+        byte[] noteBytes = RowCodec.encodeAndClear(note);
+        RowCodec.validateNote(noteBytes);
+        return noteBytes;
+    }
+
+    /**
+     * Verifies that the mutations refer to existing rows only and do not exceed the maximum number of rows when applied in order to a table with the given
+     * number of rows.
+     */
+    static void checkRows(List<EncodedMutation> encodedMutations, int rowNumber, int maxRow) throws MaxSizeExceededException {
+        int batchRowNumber = rowNumber;
+        for (EncodedMutation encodedMutation : encodedMutations) {
+            switch (encodedMutation.mutation()) {
+                case RowMutation.Create _ -> {
+                    if (batchRowNumber >= maxRow) {
+                        throw new MaxSizeExceededException("Maximum number of secrets reached! " + batchRowNumber);
+                    }
+                    batchRowNumber++;
+                }
+                case RowMutation.Update update -> checkRow(update.row(), batchRowNumber);
+                case RowMutation.Remove remove -> {
+                    checkRow(remove.row(), batchRowNumber);
+                    batchRowNumber--;
+                }
+            }
+        }
+    }
+
+    private static void checkRow(int row, int rowNumber) {
+        if (row < 0 || row >= rowNumber) {
+            throw new IllegalArgumentException("Nonexistent row " + row);
+        }
+    }
+
+    static void wipe(List<EncodedMutation> encodedMutations) {
+        for (EncodedMutation encodedMutation : encodedMutations) {
+            for (byte[] cell : new byte[][] { encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note() }) {
+                if (null != cell) {
+                    Arrays.fill(cell, (byte) 0);
+                }
+            }
+        }
+    }
+}
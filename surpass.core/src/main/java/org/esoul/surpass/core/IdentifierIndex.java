@@ -0,0 +1,175 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An exact match index of the identifiers of a {@link org.esoul.surpass.table.api.SecretTable}. Used by the implementations in this module to look up rows
+ * by identifier in constant time. Each distinct identifier is stored once and knows the slots it is used in. The index is keyed by the physical slot of a row
+ * rather than by its logical row number, so removing a row touches only its own entry and the slots of the other rows stay valid until the table compacts.
+ * Tables map the slots to rows when they read them. This class is not thread-safe, the table guards it with its own lock.
+ *
+ * @author mgp
+ */
+final class IdentifierIndex {
+
+    private final Map<ByteBuffer, Entry> entries = new HashMap<>();
+
+    /** The entry of each slot, {@code null} for a removed one. */
+    private final List<Entry> slots = new ArrayList<>();
+
+    /**
+     * Sets the identifier of a given slot. The slot is either an existing one or the one after the last.
+     */
+    void put(int slot, byte[] identifier) {
+        put(slot, identifier, 0, identifier.length);
+    }
+
+    private void put(int slot, byte[] array, int offset, int length) {
+        if (slot < slots.size() && null != slots.get(slot)) {
+            release(slots.get(slot), slot);
+        }
+        Entry entry = entries.get(ByteBuffer.wrap(array, offset, length));
+        if (null == entry) {
+            entry = new Entry(ByteBuffer.wrap(Arrays.copyOfRange(array, offset, offset + length)));
+            entries.put(entry.identifier, entry);
+        }
+        if (slot == slots.size()) {
+            slots.add(entry);
+        } else {
+            slots.set(slot, entry);
+        }
+        entry.add(slot);
+    }
+
+    /**
+     * Replaces the index with the identifiers of the rows of a one dimensional table form, i.e. rows of {@link PagedSecretTable#ROW_LEN} bytes starting at
+     * {@code rowsOffset}. The slots are the row numbers.
+     */
+    void load(byte[] sequence, int rowsOffset, int rowNumber) {
+        clear();
+        for (int row = 0; row < rowNumber; row++) {
+            int lengthIndex = rowsOffset + row * PagedSecretTable.ROW_LEN + SquareMatrix.INDEX_IDENTIFIER_LEN;
+            put(row, sequence, lengthIndex + 1, sequence[lengthIndex]);
+        }
+    }
+
+    /**
+     * Removes the identifier of a given slot. The other slots are left as they are.
+     */
+    void remove(int slot) {
+        release(slots.set(slot, null), slot);
+    }
+
+    /**
+     * Moves the remaining slots to the beginning preserving their order, the same way the table compacts its rows. Takes time proportional to the number of
+     * slots, so tables call it only when they compact, or on every removal if they move their rows anyway.
+     */
+    void compact() {
+        for (Entry entry : entries.values()) {
+            entry.size = 0;
+        }
+        int nextSlot = 0;
+        for (int slot = 0; slot < slots.size(); slot++) {
+            Entry entry = slots.get(slot);
+            if (null != entry) {
+                slots.set(nextSlot, entry);
+                entry.append(nextSlot);
+                nextSlot++;
+            }
+        }
+        slots.subList(nextSlot, slots.size()).clear();
+    }
+
+    /**
+     * Returns the slots with the given identifier in ascending order.
+     */
+    int[] find(byte[] identifier) {
+        Entry entry = entries.get(ByteBuffer.wrap(identifier));
+        return null == entry ? new int[0] : Arrays.copyOf(entry.slots, entry.size);
+    }
+
+    /**
+     * Wipes and drops all identifiers.
+     */
+    void clear() {
+        for (Entry entry : entries.values()) {
+            Arrays.fill(entry.identifier.array(), (byte) 0);
+        }
+        entries.clear();
+        slots.clear();
+    }
+
+    /**
+     * Removes a given slot from its entry. The entry is wiped and dropped if it was the last slot with this identifier.
+     */
+    private void release(Entry entry, int slot) {
+        entry.remove(slot);
+        if (0 == entry.size) {
+            entries.remove(entry.identifier);
+            Arrays.fill(entry.identifier.array(), (byte) 0);
+        }
+    }
+
+    private static final class Entry {
+
+        private final ByteBuffer identifier;
+
+        /** The slots with this identifier in ascending order. */
+        private int[] slots = new int[1];
+
+        private int size;
+
+        private Entry(ByteBuffer identifier) {
+            this.identifier = identifier;
+        }
+
+        private void add(int slot) {
+            int index = -Arrays.binarySearch(slots, 0, size, slot) - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, 2 * size);
+            }
+            System.arraycopy(slots, index, slots, index + 1, size - index);
+            slots[index] = slot;
+            size++;
+        }
+
+        /**
+         * Adds a slot greater than all the others.
+         */
+        private void append(int slot) {
+            slots[size++] = slot;
+        }
+
+        private void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.esoul.surpass.core.jca.CryptoPrimitives;
+
+/**
+ * Picks the iteration count of a key derivation function which makes a derivation take a target time on the current machine. A derivation with a fixed
+ * probe count is timed, best of a few runs after a warm up, and the count is scaled linearly to the target, up to {@link #MAX_ITERATIONS}.
+ *
+ * @author mgp
+ */
+final class KdfCalibration {
+
+    private static final int PROBE_ITERATIONS = 10_000;
+
+    private static final int PROBE_RUNS = 3;
+
+    /** Calibrated counts are rounded down to a multiple of this. */
+    private static final int ROUNDING = 1_000;
+
+    /** The highest count returned, regardless of how fast the machine is. */
+    static final int MAX_ITERATIONS = 10_000_000;
+
+    private KdfCalibration() {
+        // do nothing
+    }
+
+    /**
+     * @param kdfAlgo The key derivation function.
+     * @param keyLength The length of the derived key in bits.
+     * @param target The time a derivation should take.
+     * @param minIterations The lowest count returned, regardless of how slow the machine is.
+     * @return The iteration count.
+     * @throws GeneralSecurityException
+     */
+    static int calibrate(String kdfAlgo, int keyLength, Duration target, int minIterations) throws GeneralSecurityException {
+        SecureRandom secureRandom = new SecureRandom();
+        byte[] salt = new byte[16];
+        secureRandom.nextBytes(salt);
+        char[] password = Long.toHexString(secureRandom.nextLong()).toCharArray();
+        PBEKeySpec keySpec = new PBEKeySpec(password, salt, PROBE_ITERATIONS, keyLength);
+        SecretKeyFactory secretKeyFactory = CryptoPrimitives.secretKeyFactory(kdfAlgo);
+        try {
+            secretKeyFactory.generateSecret(keySpec);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < PROBE_RUNS; i++) {
+                long start = System.nanoTime();
+                secretKeyFactory.generateSecret(keySpec);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double iterations = (double) PROBE_ITERATIONS * target.toNanos() / Math.max(1, best);
+            int rounded = (int) Math.min(Integer.MAX_VALUE, iterations) / ROUNDING * ROUNDING;
+            return Math.max(minIterations, Math.min(MAX_ITERATIONS, rounded));
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+}
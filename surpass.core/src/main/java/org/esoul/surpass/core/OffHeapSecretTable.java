@@ -0,0 +1,490 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.esoul.surpass.table.api.EmptySequenceException;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
+
+/**
+ * This {@link SecretTable} implementation keeps its rows outside of the Java heap in a {@link MemorySegment} owned by a shared {@link Arena}. The data is not
+ * moved or duplicated by the garbage collector and it is wiped and freed deterministically by {@link #close()}. Rows use the storage scheme of
+ * {@link SquareMatrix} and the one dimensional form is the one of {@link PagedSecretTable}, so the two implementations can load each other's data. The segment
+ * grows by doubling, the old segment is wiped and freed immediately. A snapshot is a bulk copy of the used rows to a segment of its own, which is wiped and
+ * freed when the snapshot is closed. This class is thread-safe.
+ *
+ * @author mgp
+ */
+public class OffHeapSecretTable implements SecretTable {
+
+    private static final int ROW_LEN = PagedSecretTable.ROW_LEN;
+
+    private static final int RANDOM_CHUNK_LEN = 4096;
+
+    private Arena arena = null;
+
+    private MemorySegment rows = MemorySegment.NULL;
+
+    private int rowNumber = 0;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final Lock lock = new ReentrantLock();
+
+    private final IdentifierIndex identifierIndex = new IdentifierIndex();
+
+    @Override
+    public void createRow(char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        byte[] secretBytes = RowCodec.encodeAndClear(secret);
+        RowCodec.validateSecret(secretBytes);
+        byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+        RowCodec.validateIdentifier(identifierBytes);
+        byte[] noteBytes = RowCodec.encodeAndClear(note);
+        RowCodec.validateNote(noteBytes);
+        lock.lock();
+        try {
+            writeRow(nextRow(), secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateRow(int row, char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        lock.lock();
+        try {
+            checkRow(row);
+
+            byte[] secretBytes = null;
+            if (null != secret) {
+                secretBytes = RowCodec.encodeAndClear(secret);
+                RowCodec.validateSecret(secretBytes);
+            }
+            byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+            RowCodec.validateIdentifier(identifierBytes);
+            byte[] noteBytes = RowCodec.encodeAndClear(note);
+            RowCodec.validateNote(noteBytes);
+
+            writeRow(row, secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the cells of a given row. The secret is not written if it is {@code null}.
+     */
+    private void writeRow(int row, byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) {
+        if (null != secretBytes) {
+            writeCell(row, SquareMatrix.INDEX_SECRET_LEN, SquareMatrix.MAX_SECRET_LEN, secretBytes);
+        }
+        identifierIndex.put(row, identifierBytes);
+        writeCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN, SquareMatrix.MAX_IDENTIFIER_LEN, identifierBytes);
+        writeCell(row, SquareMatrix.INDEX_NOTE_LEN, SquareMatrix.MAX_NOTE_LEN, noteBytes);
+    }
+
+    @Override
+    public void applyBatch(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException {
+        List<EncodedMutation> encodedMutations = EncodedMutation.encodeAll(mutations);
+        lock.lock();
+        try {
+            EncodedMutation.checkRows(encodedMutations, rowNumber, PagedSecretTable.MAX_ROW);
+            for (EncodedMutation encodedMutation : encodedMutations) {
+                switch (encodedMutation.mutation()) {
+                    case RowMutation.Create _ -> writeRow(nextRow(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Update update -> writeRow(update.row(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Remove remove -> deleteRow(remove.row());
+                }
+            }
+        } finally {
+            lock.unlock();
+            EncodedMutation.wipe(encodedMutations);
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowNumber) {
+            throw new IllegalArgumentException("Nonexistent row " + row);
+        }
+    }
+
+    private int nextRow() throws MaxSizeExceededException {
+        if (rowNumber >= PagedSecretTable.MAX_ROW) {
+            throw new MaxSizeExceededException("Maximum number of secrets reached! " + rowNumber);
+        }
+        if (rowNumber == capacity()) {
+            ensureCapacity(Math.max(PagedSecretTable.ROWS_PER_PAGE, 2 * capacity()));
+        }
+        return rowNumber++;
+    }
+
+    private int capacity() {
+        return (int) (rows.byteSize() / ROW_LEN);
+    }
+
+    /**
+     * Moves the rows to a new segment which can hold the given number of rows. The unused part of the new segment is filled with random bytes.
+     */
+    private void ensureCapacity(int capacity) {
+        Arena newArena = Arena.ofShared();
+        MemorySegment newRows = newArena.allocate((long) capacity * ROW_LEN);
+        long usedLen = (long) rowNumber * ROW_LEN;
+        MemorySegment.copy(rows, 0, newRows, 0, usedLen);
+        fillWithRandomBytes(newRows.asSlice(usedLen));
+        release();
+        arena = newArena;
+        rows = newRows;
+    }
+
+    private void fillWithRandomBytes(MemorySegment segment) {
+        byte[] chunk = new byte[RANDOM_CHUNK_LEN];
+        for (long offset = 0; offset < segment.byteSize(); offset += chunk.length) {
+            int len = (int) Math.min(chunk.length, segment.byteSize() - offset);
+            secureRandom.nextBytes(chunk);
+            MemorySegment.copy(chunk, 0, segment, ValueLayout.JAVA_BYTE, offset, len);
+        }
+    }
+
+    private static long offset(int row, int index) {
+        return (long) row * ROW_LEN + index;
+    }
+
+    /**
+     * Writes the length byte at {@code lengthIndex} followed by the data, padded with random bytes up to {@code maxLength}. The input is cleared afterwards, so
+     * the only copy is the one outside of the heap.
+     */
+    private void writeCell(int row, int lengthIndex, int maxLength, byte[] bytes) {
+        long offset = offset(row, lengthIndex);
+        rows.set(ValueLayout.JAVA_BYTE, offset, (byte) bytes.length);
+        MemorySegment.copy(bytes, 0, rows, ValueLayout.JAVA_BYTE, offset + 1, bytes.length);
+        fillWithRandomBytes(rows.asSlice(offset + 1 + bytes.length, maxLength - bytes.length));
+        Arrays.fill(bytes, (byte) 0);
+    }
+
+    @Override
+    public int[] findRowsByIdentifier(byte[] identifier) {
+        lock.lock();
+        try {
+            return identifierIndex.find(identifier);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MemorySegment cell(int row, int lengthIndex) {
+        long offset = offset(row, lengthIndex);
+        return rows.asSlice(offset + 1, rows.get(ValueLayout.JAVA_BYTE, offset));
+    }
+
+    private byte[] readCell(int row, int lengthIndex) {
+        lock.lock();
+        try {
+            checkRow(row);
+            return cell(row, lengthIndex).toArray(ValueLayout.JAVA_BYTE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readCellInto(int row, int lengthIndex, ByteBuffer dst) {
+        lock.lock();
+        try {
+            checkRow(row);
+            MemorySegment cell = cell(row, lengthIndex);
+            dst.put(cell.asByteBuffer());
+            return (int) cell.byteSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readLength(int row, int lengthIndex) {
+        lock.lock();
+        try {
+            checkRow(row);
+            return rows.get(ValueLayout.JAVA_BYTE, offset(row, lengthIndex));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MemorySegment viewCell(int row, int lengthIndex) {
+        lock.lock();
+        try {
+            checkRow(row);
+            return cell(row, lengthIndex).asReadOnly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeRow(int row) {
+        lock.lock();
+        try {
+            checkRow(row);
+            deleteRow(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteRow(int row) {
+        identifierIndex.remove(row);
+        identifierIndex.compact();
+        MemorySegment.copy(rows, offset(row + 1, 0), rows, offset(row, 0), (long) (rowNumber - row - 1) * ROW_LEN);
+        rowNumber--;
+        fillWithRandomBytes(rows.asSlice(offset(rowNumber, 0), ROW_LEN));
+    }
+
+    @Override
+    public int getRowNumber() {
+        lock.lock();
+        try {
+            return rowNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxRow() {
+        return PagedSecretTable.MAX_ROW;
+    }
+
+    @Override
+    public byte[] readSecret(int row) {
+        return readCell(row, SquareMatrix.INDEX_SECRET_LEN);
+    }
+
+    @Override
+    public byte[] readIdentifier(int row) {
+        return readCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+    }
+
+    @Override
+    public byte[] readNote(int row) {
+        return readCell(row, SquareMatrix.INDEX_NOTE_LEN);
+    }
+
+    @Override
+    public int readSecretInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_SECRET_LEN, dst);
+    }
+
+    @Override
+    public int readIdentifierInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_IDENTIFIER_LEN, dst);
+    }
+
+    @Override
+    public int readNoteInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_NOTE_LEN, dst);
+    }
+
+    @Override
+    public int getSecretLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_SECRET_LEN);
+    }
+
+    @Override
+    public int getIdentifierLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+    }
+
+    @Override
+    public int getNoteLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_NOTE_LEN);
+    }
+
+    /**
+     * Returns a read-only view of the secret without copying it to the heap. The view reflects later changes of the row and it becomes inaccessible when the
+     * table grows, is loaded or closed.
+     * 
+     * @param row The row to read.
+     * @return A read-only view of the secret.
+     */
+    public MemorySegment viewSecret(int row) {
+        return viewCell(row, SquareMatrix.INDEX_SECRET_LEN);
+    }
+
+    /**
+     * Returns a read-only view of the identifier. See {@link #viewSecret(int)}.
+     * 
+     * @param row The row to read.
+     * @return A read-only view of the identifier.
+     */
+    public MemorySegment viewIdentifier(int row) {
+        return viewCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+    }
+
+    /**
+     * Returns a read-only view of the note. See {@link #viewSecret(int)}.
+     * 
+     * @param row The row to read.
+     * @return A read-only view of the note.
+     */
+    public MemorySegment viewNote(int row) {
+        return viewCell(row, SquareMatrix.INDEX_NOTE_LEN);
+    }
+
+    /**
+     * Copies the used rows with a single bulk copy outside of the heap. The snapshot must be closed to wipe and free the copy.
+     */
+    @Override
+    public SecretTableSnapshot snapshot() {
+        lock.lock();
+        try {
+            Arena snapshotArena = Arena.ofShared();
+            long usedLen = (long) rowNumber * ROW_LEN;
+            MemorySegment snapshotRows = snapshotArena.allocate(Math.max(1L, usedLen));
+            MemorySegment.copy(rows, 0, snapshotRows, 0, usedLen);
+            return new Snapshot(snapshotArena, snapshotRows, rowNumber, secureRandom);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] toOneDimension() {
+        lock.lock();
+        try {
+            byte[] sequence = PagedSecretTable.allocateSequence(rowNumber, PagedSecretTable.pagesFor(rowNumber), secureRandom);
+            MemorySegment.copy(rows, ValueLayout.JAVA_BYTE, 0, sequence, PagedSecretTable.HEADER_LEN, rowNumber * ROW_LEN);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void load(byte[] sequence) {
+        int loadedRowNumber = PagedSecretTable.readRowNumber(sequence);
+        lock.lock();
+        try {
+            rowNumber = 0;
+            ensureCapacity(PagedSecretTable.pagesFor(loadedRowNumber) * PagedSecretTable.ROWS_PER_PAGE);
+            MemorySegment.copy(sequence, PagedSecretTable.rowsOffset(sequence), rows, ValueLayout.JAVA_BYTE, 0, loadedRowNumber * ROW_LEN);
+            rowNumber = loadedRowNumber;
+            identifierIndex.load(sequence, PagedSecretTable.rowsOffset(sequence), loadedRowNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            release();
+            rows = MemorySegment.NULL;
+            rowNumber = 0;
+            identifierIndex.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        if (null != arena) {
+            rows.fill((byte) 0);
+            arena.close();
+            arena = null;
+        }
+    }
+
+    private static final class Snapshot implements SecretTableSnapshot {
+
+        private final Arena arena;
+
+        private final MemorySegment rows;
+
+        private final int rowNumber;
+
+        private final SecureRandom secureRandom;
+
+        private Snapshot(Arena arena, MemorySegment rows, int rowNumber, SecureRandom secureRandom) {
+            this.arena = arena;
+            this.rows = rows;
+            this.rowNumber = rowNumber;
+            this.secureRandom = secureRandom;
+        }
+
+        @Override
+        public int getRowNumber() {
+            return rowNumber;
+        }
+
+        @Override
+        public byte[] readSecret(int row) {
+            return readCell(row, SquareMatrix.INDEX_SECRET_LEN);
+        }
+
+        @Override
+        public byte[] readIdentifier(int row) {
+            return readCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+        }
+
+        @Override
+        public byte[] readNote(int row) {
+            return readCell(row, SquareMatrix.INDEX_NOTE_LEN);
+        }
+
+        private byte[] readCell(int row, int lengthIndex) {
+            if (row < 0 || row >= rowNumber) {
+                throw new IllegalArgumentException("Nonexistent row " + row);
+            }
+            long offset = offset(row, lengthIndex);
+            return rows.asSlice(offset + 1, rows.get(ValueLayout.JAVA_BYTE, offset)).toArray(ValueLayout.JAVA_BYTE);
+        }
+
+        @Override
+        public byte[] toOneDimension() {
+            byte[] sequence = PagedSecretTable.allocateSequence(rowNumber, PagedSecretTable.pagesFor(rowNumber), secureRandom);
+            MemorySegment.copy(rows, ValueLayout.JAVA_BYTE, 0, sequence, PagedSecretTable.HEADER_LEN, rowNumber * ROW_LEN);
+            return sequence;
+        }
+
+        /**
+         * Wipes and frees the copy of the rows. Closing the snapshot more than once has no effect.
+         */
+        @Override
+        public void close() {
+            if (arena.scope().isAlive()) {
+                rows.fill((byte) 0);
+                arena.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.esoul.surpass.table.api.EmptySequenceException;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
+import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
+
+/**
+ * This {@link SecretTable} implementation stores rows in fixed-size pages which are allocated on demand, so it is not bound by {@link SquareMatrix#MAX_ROW}.
+ * Memory grows with the number of rows and appending a row is O(1) amortized. Each row uses the storage scheme of {@link SquareMatrix}:
+ * 
+ * <pre>
+ * [secret length - 1 byte][secret - up to 63 bytes][identifier length - 1 byte][identifier - up to 63 bytes][note length - 1 byte][note - up to 127 bytes]
+ * </pre>
+ * 
+ * The one dimensional form starts with a header row (format version and number of used rows) followed by the pages. The number of pages is rounded up to a
+ * power of two (at least {@link #MIN_PAGES}), so the size of the data reveals a size bucket rather than the number of secrets. Unused positions are filled with
+ * random bytes. Sequences produced by {@link SquareMatrix} are accepted by {@link #load(byte[])}, which allows existing data to be migrated. This class is
+ * thread-safe. Snapshots share the pages with the table, a page is copied only when it is modified after a snapshot was taken.
+ * <p>
+ * {@link SquareMatrix} stays the default provider, since a data file stored by this class cannot be read by it. This class is selected by setting the system
+ * property {@code org.esoul.surpass.table.api.SecretTable} to its class name, which migrates the data on the next store.
+ *
+ * @author mgp
+ */
+public class PagedSecretTable implements SecretTable {
+
+    public static final int ROW_LEN = SquareMatrix.MAX_COL + 1;
+
+    public static final int ROWS_PER_PAGE = 64;
+
+    public static final int PAGE_LEN = ROWS_PER_PAGE * ROW_LEN;
+
+    public static final int MIN_PAGES = 4;
+
+    public static final int MAX_PAGES = 1024;
+
+    public static final int MAX_ROW = MAX_PAGES * ROWS_PER_PAGE;
+
+    public static final int HEADER_LEN = ROW_LEN;
+
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final int HEADER_INDEX_VERSION = 0;
+
+    private static final int HEADER_INDEX_ROW_NUMBER = 1;
+
+    private static final int SQUARE_MATRIX_LEN = (SquareMatrix.MAX_ROW + 1) * (SquareMatrix.MAX_COL + 1);
+
+    private final List<byte[]> pages = new ArrayList<>();
+
+    private int rowNumber = 0;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final Lock lock = new ReentrantLock();
+
+    /** Incremented by every snapshot. Pages of an older generation may be shared with a snapshot and are copied before they are modified. */
+    private long generation;
+
+    private final long[] pageGenerations = new long[MAX_PAGES];
+
+    private final IdentifierIndex identifierIndex = new IdentifierIndex();
+
+    @Override
+    public void createRow(char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        byte[] secretBytes = RowCodec.encodeAndClear(secret);
+        RowCodec.validateSecret(secretBytes);
+        byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+        RowCodec.validateIdentifier(identifierBytes);
+        byte[] noteBytes = RowCodec.encodeAndClear(note);
+        RowCodec.validateNote(noteBytes);
+        lock.lock();
+        try {
+            writeRow(nextRow(), secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateRow(int row, char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
+        lock.lock();
+        try {
+            checkRow(row);
+
+            byte[] secretBytes = null;
+            if (null != secret) {
+                secretBytes = RowCodec.encodeAndClear(secret);
+                RowCodec.validateSecret(secretBytes);
+            }
+            byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+            RowCodec.validateIdentifier(identifierBytes);
+            byte[] noteBytes = RowCodec.encodeAndClear(note);
+            RowCodec.validateNote(noteBytes);
+
+            writeRow(row, secretBytes, identifierBytes, noteBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the cells of a given row. The secret is not written if it is {@code null}.
+     */
+    private void writeRow(int row, byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) {
+        if (null != secretBytes) {
+            writeCell(row, SquareMatrix.INDEX_SECRET_LEN, SquareMatrix.MAX_SECRET_LEN, secretBytes);
+        }
+        writeCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN, SquareMatrix.MAX_IDENTIFIER_LEN, identifierBytes);
+        writeCell(row, SquareMatrix.INDEX_NOTE_LEN, SquareMatrix.MAX_NOTE_LEN, noteBytes);
+        identifierIndex.put(row, identifierBytes);
+    }
+
+    @Override
+    public void applyBatch(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException {
+        List<EncodedMutation> encodedMutations = EncodedMutation.encodeAll(mutations);
+        lock.lock();
+        try {
+            EncodedMutation.checkRows(encodedMutations, rowNumber, MAX_ROW);
+            for (EncodedMutation encodedMutation : encodedMutations) {
+                switch (encodedMutation.mutation()) {
+                    case RowMutation.Create _ -> writeRow(nextRow(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Update update -> writeRow(update.row(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Remove remove -> deleteRow(remove.row());
+                }
+            }
+        } finally {
+            lock.unlock();
+            EncodedMutation.wipe(encodedMutations);
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowNumber) {
+            throw new IllegalArgumentException("Nonexistent row " + row);
+        }
+    }
+
+    private int nextRow() throws MaxSizeExceededException {
+        if (rowNumber >= MAX_ROW) {
+            throw new MaxSizeExceededException("Maximum number of secrets reached! " + rowNumber);
+        }
+        if (rowNumber == pages.size() * ROWS_PER_PAGE) {
+            addPage();
+        }
+        return rowNumber++;
+    }
+
+    private void addPage() {
+        byte[] page = new byte[PAGE_LEN];
+        secureRandom.nextBytes(page);
+        pageGenerations[pages.size()] = generation;
+        pages.add(page);
+    }
+
+    private byte[] page(int row) {
+        return pages.get(row / ROWS_PER_PAGE);
+    }
+
+    /**
+     * Returns the page of the given row for writing. The page is copied first if it may be shared with a snapshot.
+     */
+    private byte[] mutablePage(int row) {
+        int pageIndex = row / ROWS_PER_PAGE;
+        if (pageGenerations[pageIndex] != generation) {
+            pages.set(pageIndex, pages.get(pageIndex).clone());
+            pageGenerations[pageIndex] = generation;
+        }
+        return pages.get(pageIndex);
+    }
+
+    private static int offset(int row) {
+        return (row % ROWS_PER_PAGE) * ROW_LEN;
+    }
+
+    /**
+     * Writes the length byte at {@code lengthIndex} followed by the data, padded with random bytes up to {@code maxLength}.
+     */
+    private void writeCell(int row, int lengthIndex, int maxLength, byte[] bytes) {
+        byte[] page = mutablePage(row);
+        int offset = offset(row) + lengthIndex;
+        page[offset] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, page, offset + 1, bytes.length);
+        byte[] padding = new byte[maxLength - bytes.length];
+        secureRandom.nextBytes(padding);
+        System.arraycopy(padding, 0, page, offset + 1 + bytes.length, padding.length);
+    }
+
+    private byte[] readCell(int row, int lengthIndex) {
+        lock.lock();
+        try {
+            return copyCell(page(row), row, lengthIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readCellInto(int row, int lengthIndex, ByteBuffer dst) {
+        lock.lock();
+        try {
+            byte[] page = page(row);
+            int offset = offset(row) + lengthIndex;
+            dst.put(page, offset + 1, page[offset]);
+            return page[offset];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readLength(int row, int lengthIndex) {
+        lock.lock();
+        try {
+            return page(row)[offset(row) + lengthIndex];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int[] findRowsByIdentifier(byte[] identifier) {
+        lock.lock();
+        try {
+            return identifierIndex.find(identifier);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] copyCell(byte[] page, int row, int lengthIndex) {
+        int offset = offset(row) + lengthIndex;
+        return Arrays.copyOfRange(page, offset + 1, offset + 1 + page[offset]);
+    }
+
+    @Override
+    public void removeRow(int row) {
+        lock.lock();
+        try {
+            checkRow(row);
+            deleteRow(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteRow(int row) {
+        identifierIndex.remove(row);
+        identifierIndex.compact();
+        for (int i = row; i < rowNumber - 1; i++) {
+            System.arraycopy(page(i + 1), offset(i + 1), mutablePage(i), offset(i), ROW_LEN);
+        }
+        rowNumber--;
+        byte[] padding = new byte[ROW_LEN];
+        secureRandom.nextBytes(padding);
+        System.arraycopy(padding, 0, mutablePage(rowNumber), offset(rowNumber), ROW_LEN);
+        if (0 == rowNumber % ROWS_PER_PAGE) {
+            // The last page is not used anymore. It was made private above, so it is not shared with a snapshot.
+            Arrays.fill(pages.removeLast(), (byte) 0);
+        }
+    }
+
+    @Override
+    public int getRowNumber() {
+        lock.lock();
+        try {
+            return rowNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxRow() {
+        return MAX_ROW;
+    }
+
+    @Override
+    public byte[] readSecret(int row) {
+        return readCell(row, SquareMatrix.INDEX_SECRET_LEN);
+    }
+
+    @Override
+    public byte[] readIdentifier(int row) {
+        return readCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+    }
+
+    @Override
+    public byte[] readNote(int row) {
+        return readCell(row, SquareMatrix.INDEX_NOTE_LEN);
+    }
+
+    @Override
+    public int readSecretInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_SECRET_LEN, dst);
+    }
+
+    @Override
+    public int readIdentifierInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_IDENTIFIER_LEN, dst);
+    }
+
+    @Override
+    public int readNoteInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SquareMatrix.INDEX_NOTE_LEN, dst);
+    }
+
+    @Override
+    public int getSecretLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_SECRET_LEN);
+    }
+
+    @Override
+    public int getIdentifierLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+    }
+
+    @Override
+    public int getNoteLength(int row) {
+        return readLength(row, SquareMatrix.INDEX_NOTE_LEN);
+    }
+
+    /**
+     * Copies the page references only, the pages themselves are copied lazily by the writers.
+     */
+    @Override
+    public SecretTableSnapshot snapshot() {
+        lock.lock();
+        try {
+            generation++;
+            return new Snapshot(List.copyOf(pages), rowNumber, secureRandom);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] toOneDimension() {
+        try (SecretTableSnapshot snapshot = snapshot()) {
+            return snapshot.toOneDimension();
+        }
+    }
+
+    @Override
+    public void load(byte[] sequence) {
+        int loadedRowNumber = readRowNumber(sequence);
+        int rowsOffset = rowsOffset(sequence);
+        lock.lock();
+        try {
+            clear();
+            for (int i = 0; i < pagesFor(loadedRowNumber); i++) {
+                addPage();
+            }
+            for (int row = 0; row < loadedRowNumber; row++) {
+                System.arraycopy(sequence, rowsOffset + row * ROW_LEN, page(row), offset(row), ROW_LEN);
+            }
+            rowNumber = loadedRowNumber;
+            identifierIndex.load(sequence, rowsOffset, loadedRowNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Allocates a sequence big enough for the given number of pages rounded up to the size bucket. The header is written and everything else is filled with
+     * random bytes. The caller copies the used rows after the header.
+     */
+    static byte[] allocateSequence(int rowNumber, int pageCount, SecureRandom secureRandom) {
+        byte[] sequence = new byte[HEADER_LEN + bucketSize(pageCount) * PAGE_LEN];
+        secureRandom.nextBytes(sequence);
+        Arrays.fill(sequence, 0, HEADER_LEN, (byte) 0);
+        sequence[HEADER_INDEX_VERSION] = FORMAT_VERSION;
+        ByteBuffer.wrap(sequence).putInt(HEADER_INDEX_ROW_NUMBER, rowNumber);
+        return sequence;
+    }
+
+    /**
+     * Returns the smallest power of two which is not less than the given number of pages and not less than {@link #MIN_PAGES}.
+     */
+    private static int bucketSize(int pageCount) {
+        return Math.max(MIN_PAGES, Integer.highestOneBit(Math.max(1, pageCount - 1)) << 1);
+    }
+
+    /**
+     * Validates a sequence produced by this class or by {@link SquareMatrix} and returns the number of used rows in it.
+     */
+    static int readRowNumber(byte[] sequence) {
+        if (SQUARE_MATRIX_LEN == sequence.length) {
+            return Byte.toUnsignedInt(sequence[SquareMatrix.SERVICE_ROW * ROW_LEN + 1]);
+        }
+        if (sequence.length < HEADER_LEN || 0 != (sequence.length - HEADER_LEN) % PAGE_LEN || FORMAT_VERSION != sequence[HEADER_INDEX_VERSION]) {
+            throw new IllegalArgumentException("Invalid sequence size!");
+        }
+        int loadedRowNumber = ByteBuffer.wrap(sequence).getInt(HEADER_INDEX_ROW_NUMBER);
+        int pageCount = (sequence.length - HEADER_LEN) / PAGE_LEN;
+        if (loadedRowNumber < 0 || loadedRowNumber > Math.min(pageCount * ROWS_PER_PAGE, MAX_ROW)) {
+            throw new IllegalArgumentException("Invalid number of rows " + loadedRowNumber);
+        }
+        return loadedRowNumber;
+    }
+
+    /**
+     * Returns the index of the first row in a sequence produced by this class or by {@link SquareMatrix}.
+     */
+    static int rowsOffset(byte[] sequence) {
+        return SQUARE_MATRIX_LEN == sequence.length ? 0 : HEADER_LEN;
+    }
+
+    static int pagesFor(int rows) {
+        return (rows + ROWS_PER_PAGE - 1) / ROWS_PER_PAGE;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zeroes the pages owned by the table and drops them. Pages shared with a snapshot are left intact.
+     */
+    private void clear() {
+        for (int i = 0; i < pages.size(); i++) {
+            if (pageGenerations[i] == generation) {
+                Arrays.fill(pages.get(i), (byte) 0);
+            }
+        }
+        pages.clear();
+        rowNumber = 0;
+        identifierIndex.clear();
+    }
+
+    private static final class Snapshot implements SecretTableSnapshot {
+
+        private final List<byte[]> pages;
+
+        private final int rowNumber;
+
+        private final SecureRandom secureRandom;
+
+        private Snapshot(List<byte[]> pages, int rowNumber, SecureRandom secureRandom) {
+            this.pages = pages;
+            this.rowNumber = rowNumber;
+            this.secureRandom = secureRandom;
+        }
+
+        @Override
+        public int getRowNumber() {
+            return rowNumber;
+        }
+
+        @Override
+        public byte[] readSecret(int row) {
+            return readCell(row, SquareMatrix.INDEX_SECRET_LEN);
+        }
+
+        @Override
+        public byte[] readIdentifier(int row) {
+            return readCell(row, SquareMatrix.INDEX_IDENTIFIER_LEN);
+        }
+
+        @Override
+        public byte[] readNote(int row) {
+            return readCell(row, SquareMatrix.INDEX_NOTE_LEN);
+        }
+
+        private byte[] readCell(int row, int lengthIndex) {
+            if (row < 0 || row >= rowNumber) {
+                throw new IllegalArgumentException("Nonexistent row " + row);
+            }
+            return copyCell(pages.get(row / ROWS_PER_PAGE), row, lengthIndex);
+        }
+
+        @Override
+        public byte[] toOneDimension() {
+            byte[] sequence = allocateSequence(rowNumber, pages.size(), secureRandom);
+            for (int i = 0; i < pages.size(); i++) {
+                System.arraycopy(pages.get(i), 0, sequence, HEADER_LEN + i * PAGE_LEN, PAGE_LEN);
+            }
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.esoul.surpass.table.api.EmptySequenceException;
+import org.esoul.surpass.table.api.MaxSizeExceededException;
+
+/**
+ * Encoding and validation of row input shared by the {@link org.esoul.surpass.table.api.SecretTable} implementations in this module. The size limits are the
+ * ones of the {@link SquareMatrix} storage scheme.
+ *
+ * @author mgp
+ */
+final class RowCodec {
+
+    private RowCodec() {
+        // no instances
+    }
+
+    /**
+     * Encodes the input to UTF-8 and clears it. The encoder's buffer may be bigger than the encoded data, so only its used part is returned and the buffer is
+     * wiped.
+     */
+    static byte[] encodeAndClear(char[] input) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(input));
+        byte[] data = Arrays.copyOfRange(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.arrayOffset() + encoded.limit());
+        Arrays.fill(encoded.array(), (byte) 0);
+        Arrays.fill(input, '\0');
+        return data;
+    }
+
+    static void validateSecret(byte[] secretBytes) throws MaxSizeExceededException, EmptySequenceException {
+        if (0 == secretBytes.length) {
+            throw new EmptySequenceException("Secret cannot be empty!");
+        }
+        if (secretBytes.length > SquareMatrix.MAX_SECRET_LEN) {
+            throw new MaxSizeExceededException("Secret cannot exceed " + SquareMatrix.MAX_SECRET_LEN + " bytes!");
+        }
+    }
+
+    static void validateIdentifier(byte[] identifierBytes) throws MaxSizeExceededException, EmptySequenceException {
+        if (0 == identifierBytes.length) {
+            throw new EmptySequenceException("Identifier cannot be empty!");
+        }
+        if (identifierBytes.length > SquareMatrix.MAX_IDENTIFIER_LEN) {
+            throw new MaxSizeExceededException("Identifier cannot exceed " + SquareMatrix.MAX_IDENTIFIER_LEN + " bytes!");
+        }
+    }
+
+    static void validateNote(byte[] noteBytes) throws MaxSizeExceededException {
+        if (noteBytes.length > SquareMatrix.MAX_NOTE_LEN) {
+            throw new MaxSizeExceededException("Note cannot exceed " + SquareMatrix.MAX_NOTE_LEN + " bytes!");
+        }
+    }
+}
@@ -21,25 +21,50 @@
 */
 package org.esoul.surpass.core;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectStreamException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
+import org.esoul.surpass.core.jca.CryptoPrimitives;
 import org.esoul.surpass.crypto.api.CryptoService;
 
 /**
- * Uses a {@link Cipher} with configurable parameters for password-based encryption (PBE).
+ * Uses a {@link Cipher} with configurable parameters for password-based encryption (PBE). When the PBE algorithm is a PBES2 one with AES, e.g. the default,
+ * the key is derived separately with the matching PBKDF2 algorithm and kept in a {@link DerivedKeyCache}, so the key derivation runs once per password and
+ * salt instead of on every operation. Every encryption uses a fresh salt, so the cache saves the derivation when the same cipher input is decrypted, checked
+ * or re-keyed again.
+ * <p>
+ * In that case the data is encrypted with a random data key, which is stored wrapped with the derived key (envelope encryption), so changing the password
+ * only replaces the header of the cipher input in {@link #changeKey(char[], char[], byte[])}. The data is split into chunks of {@link #CHUNK_LEN} bytes which
+ * are encrypted and authenticated separately by a {@link ChunkedCipher}, in parallel and with random access to the chunks. The header also carries a key
+ * verifier, a MAC of the format version, chunk length and iteration count, so a key is checked and these header fields are authenticated before decrypting,
+ * and a key is checked without decrypting at all in {@link #verifyKey(char[], byte[])}. The verifier and the wrapping of the data key use separate subkeys
+ * expanded from the derived key. The iteration count of the key derivation is calibrated on first use to take a target time on the current machine and is
+ * stored in the header, so every cipher input is decrypted with its own count. All earlier versions are still decrypted.
  *
  * @author mgp
  */
@@ -49,44 +74,538 @@ public class SimpleCipher implements CryptoService {
 
     private static final String DIGEST_ALGO = System.getProperty(ConfigurationProperties.DIGEST_ALGO, "SHA-512");
 
+    /** The iteration count of versions before {@value #VERSION_CALIBRATED} and the lowest calibrated count. */
     private static final int ITERATION_COUNT = Integer.getInteger(ConfigurationProperties.ITERATION_COUNT, 100);
 
+    /**
+     * The highest iteration count accepted from a header. It leaves room for a faster machine than the calibrating one, but stops a corrupt or tampered
+     * header from running the key derivation for hours before the key check can fail.
+     */
+    private static final int MAX_ITERATION_COUNT = Math.max(ITERATION_COUNT, 4 * KdfCalibration.MAX_ITERATIONS);
+
+    private static final Duration KDF_TARGET = Duration.ofMillis(Long.getLong(ConfigurationProperties.KDF_TARGET, 250));
+
     private static final int VERSION_INDEX = 0;
 
     public static final int VERSION_LEN = 1;
 
+    /** Salt, IV and cipher text. */
+    public static final byte VERSION_PBE = 0;
+
+    /** Salt, IV, key verifier and cipher text. */
+    public static final byte VERSION_VERIFIED = 1;
+
+    /** Salt, IV, key verifier, wrapped data key and cipher text. */
+    public static final byte VERSION_ENVELOPE = 2;
+
+    /** Salt, IV, key verifier, wrapped data key, chunk length and the chunks of the cipher text. */
+    public static final byte VERSION_CHUNKED = 3;
+
+    /** Salt, IV, key verifier, wrapped data key, chunk length, iteration count and the chunks of the cipher text. */
+    public static final byte VERSION_CALIBRATED = 4;
+
+    /**
+     * The header of version {@value #VERSION_CALIBRATED}, but the key verifier authenticates the version, chunk length and iteration count, and it and the key
+     * wrap use separate subkeys instead of the derived key.
+     */
+    public static final byte VERSION_SUBKEYS = 5;
+
     public static final int SALT_LEN = Integer.getInteger(ConfigurationProperties.SALT_LEN, 16);
 
     public static final int IV_LEN = Integer.getInteger(ConfigurationProperties.IV_LEN, 16);
 
+    public static final int VERIFIER_LEN = 16;
+
+    private static final String VERIFIER_MAC_ALGO = "HmacSHA256";
+
+    /** The fixed text of the key verifiers before version {@value #VERSION_SUBKEYS} and the label of the verifier subkey. */
+    private static final byte[] VERIFIER_TEXT = "org.esoul.surpass.key.verifier".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] KEY_WRAP_LABEL = "org.esoul.surpass.key.wrap".getBytes(StandardCharsets.US_ASCII);
+
+    /** The length of the verifier subkey in bytes, the output length of {@value #VERIFIER_MAC_ALGO}. */
+    private static final int VERIFIER_KEY_LEN = 32;
+
+    private static final Duration KEY_CACHE_TTL = Duration.ofSeconds(Long.getLong(ConfigurationProperties.KEY_CACHE_TTL, 300));
+
+    /** The PBKDF2 algorithm of the PBE algorithm, null if it cannot be split into a key derivation and a cipher. */
+    private static final String KDF_ALGO;
+
+    /** The length of the derived and data keys in bits. */
+    private static final int KEY_LEN;
+
+    static {
+        Matcher matcher = Pattern.compile("PBEWith(Hmac\\w+)AndAES_(\\d+)").matcher(PBE_ALGO);
+        boolean pbes2Aes = matcher.matches();
+        KDF_ALGO = pbes2Aes ? "PBKDF2With" + matcher.group(1) : null;
+        KEY_LEN = pbes2Aes ? Integer.parseInt(matcher.group(2)) : 0;
+    }
+
+    /** AES key wrap adds one 8 byte block to the key. */
+    public static final int WRAPPED_KEY_LEN = KEY_LEN / 8 + 8;
+
+    private static final String AES_CIPHER_ALGO = "AES/CBC/PKCS5Padding";
+
+    private static final String KEY_WRAP_ALGO = "AESWrap";
+
+    private static final int VERIFIER_INDEX = VERSION_LEN + SALT_LEN + IV_LEN;
+
+    private static final int WRAPPED_KEY_INDEX = VERIFIER_INDEX + VERIFIER_LEN;
+
+    private static final int CHUNK_LENGTH_INDEX = WRAPPED_KEY_INDEX + WRAPPED_KEY_LEN;
+
+    private static final int ITERATION_COUNT_INDEX = CHUNK_LENGTH_INDEX + Integer.BYTES;
+
+    private static final int STREAM_BUFFER_LEN = 64 * 1024;
+
+    public static final int CHUNK_LEN = Integer.getInteger(ConfigurationProperties.CHUNK_LEN, 64 * 1024);
+
     private SecureRandom secureRandom = new SecureRandom();
 
+    /** Null if the PBE algorithm cannot be split into a key derivation and a cipher. */
+    private final DerivedKeyCache keyCache = null != KDF_ALGO ? new DerivedKeyCache(KDF_ALGO, KEY_LEN, "AES", KEY_CACHE_TTL) : null;
+
+    private final Duration kdfTarget;
+
+    /** The iteration count of new cipher inputs, zero until calibrated. */
+    private volatile int iterationCount;
+
+    public SimpleCipher() {
+        this(KDF_TARGET);
+    }
+
+    /**
+     * @param kdfTarget The time a key derivation should take on this machine, zero to always use the configured iteration count.
+     */
+    public SimpleCipher(Duration kdfTarget) {
+        this.kdfTarget = kdfTarget;
+    }
+
     @Override
     public byte[] encrypt(char[] key, byte[] data) throws GeneralSecurityException {
+        return toArray(encrypt(key, ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * Encrypts the remaining bytes of the data into a new buffer, direct if the data is. The header is written first and the cipher encrypts straight after
+     * it, so the cipher output is the only copy of the data.
+     */
+    @Override
+    public ByteBuffer encrypt(char[] key, ByteBuffer data) throws GeneralSecurityException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength(encryptionVersion()));
+        Header header = writeHeader(key, headerBuffer);
+        ByteBuffer output;
+        if (0 != header.chunkLength()) {
+            ChunkedCipher chunkedCipher = new ChunkedCipher(header.dataKey(), header.iv(), header.chunkLength());
+            output = allocate(headerBuffer.capacity() + chunkedCipher.cipherTextLength(data.remaining()), data.isDirect());
+            chunkedCipher.encrypt(data, output.put(headerBuffer.flip()));
+        } else {
+            Cipher cipher = createPbeCipher(Cipher.ENCRYPT_MODE, key, header.salt(), header.iv());
+            output = allocate(headerBuffer.capacity() + cipher.getOutputSize(data.remaining()), data.isDirect());
+            cipher.doFinal(data, output.put(headerBuffer.flip()));
+        }
+        return output.flip();
+    }
+
+    @Override
+    public void encrypt(char[] key, ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength(encryptionVersion()));
+        Header header = writeHeader(key, headerBuffer);
+        writeFully(target, headerBuffer.flip());
+        if (0 != header.chunkLength()) {
+            new ChunkedCipher(header.dataKey(), header.iv(), header.chunkLength()).encrypt(source, target);
+        } else {
+            transform(createPbeCipher(Cipher.ENCRYPT_MODE, key, header.salt(), header.iv()), source, target);
+        }
+    }
+
+    @Override
+    public byte[] decrypt(char[] key, byte[] cipherInput) throws GeneralSecurityException {
+        return toArray(decrypt(key, ByteBuffer.wrap(cipherInput)));
+    }
+
+    /**
+     * Decrypts the remaining bytes of the cipher input into a new buffer, direct if the cipher input is. The header is parsed in place and the cipher reads the
+     * cipher text after it without copying it.
+     */
+    @Override
+    public ByteBuffer decrypt(char[] key, ByteBuffer cipherInput) throws GeneralSecurityException {
+        ByteBuffer input = cipherInput.duplicate();
+        Header header = readHeader(key, input);
+        ByteBuffer output;
+        if (0 != header.chunkLength()) {
+            ChunkedCipher chunkedCipher = new ChunkedCipher(header.dataKey(), header.iv(), header.chunkLength());
+            output = allocate(chunkedCipher.clearTextLength(input.remaining()), cipherInput.isDirect());
+            chunkedCipher.decrypt(input, output);
+        } else {
+            Cipher cipher = createDecryptionCipher(key, header);
+            try {
+                output = allocate(cipher.getOutputSize(input.remaining()), cipherInput.isDirect());
+                cipher.doFinal(input, output);
+            } finally {
+                release(cipher);
+            }
+        }
+        cipherInput.position(cipherInput.limit());
+        return output.flip();
+    }
+
+    /**
+     * Decrypts only the chunks of a version {@value #VERSION_CHUNKED} or later cipher input which hold the range. Earlier versions are decrypted whole.
+     */
+    @Override
+    public ByteBuffer decrypt(char[] key, ByteBuffer cipherInput, long offset, int length) throws GeneralSecurityException {
+        ByteBuffer input = cipherInput.duplicate();
+        if (!input.hasRemaining() || VERSION_CHUNKED > input.get(input.position())) {
+            return CryptoService.super.decrypt(key, cipherInput, offset, length);
+        }
+        Header header = readHeader(key, input);
+        return new ChunkedCipher(header.dataKey(), header.iv(), header.chunkLength()).decrypt(input, offset, length);
+    }
+
+    @Override
+    public void decrypt(char[] key, ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        ByteBuffer version = ByteBuffer.allocate(VERSION_LEN);
+        readFully(source, version);
+        ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength(version.get(VERSION_INDEX))).put(version.flip());
+        readFully(source, headerBuffer);
+        Header header = readHeader(key, headerBuffer.flip());
+        if (0 != header.chunkLength()) {
+            new ChunkedCipher(header.dataKey(), header.iv(), header.chunkLength()).decrypt(source, target);
+        } else {
+            Cipher cipher = createDecryptionCipher(key, header);
+            try {
+                transform(cipher, source, target);
+            } finally {
+                release(cipher);
+            }
+        }
+    }
+
+    /**
+     * Re-wraps the data key of a version {@value #VERSION_ENVELOPE} or later cipher input with a key derived from the new key and a new salt. The cipher text
+     * is copied as it is. Chunked cipher inputs are rewritten as version {@value #VERSION_SUBKEYS} with the calibrated iteration count. Version
+     * {@value #VERSION_ENVELOPE} keeps its format. Earlier versions are decrypted and encrypted again.
+     */
+    @Override
+    public byte[] changeKey(char[] currentKey, char[] newKey, byte[] cipherInput) throws GeneralSecurityException {
+        byte version = cipherInput[VERSION_INDEX];
+        if (null == keyCache || VERSION_ENVELOPE > version) {
+            return CryptoService.super.changeKey(currentKey, newKey, cipherInput);
+        }
+        int headerLength = headerLength(version);
+        if (cipherInput.length < headerLength) {
+            throw new GeneralSecurityException("The cipher input ends in its header!");
+        }
+        byte[] currentSalt = Arrays.copyOfRange(cipherInput, VERSION_LEN, VERSION_LEN + SALT_LEN);
+        int currentIterations = iterationCount(version, ByteBuffer.wrap(cipherInput), ITERATION_COUNT_INDEX);
+        int chunkLength = VERSION_CHUNKED <= version ? ByteBuffer.wrap(cipherInput).getInt(CHUNK_LENGTH_INDEX) : 0;
+        checkKey(version, currentKey, currentSalt, Arrays.copyOfRange(cipherInput, VERIFIER_INDEX, VERIFIER_INDEX + VERIFIER_LEN), currentIterations,
+                chunkLength);
+        SecretKey dataKey = unwrap(version, currentKey, currentSalt, Arrays.copyOfRange(cipherInput, WRAPPED_KEY_INDEX, WRAPPED_KEY_INDEX + WRAPPED_KEY_LEN),
+                currentIterations);
+
+        byte[] salt = new byte[SALT_LEN];
+        secureRandom.nextBytes(salt);
+        byte newVersion = VERSION_ENVELOPE;
+        int iterations = ITERATION_COUNT;
+        byte[] result = cipherInput.clone();
+        if (VERSION_ENVELOPE != version) {
+            newVersion = VERSION_SUBKEYS;
+            iterations = iterationCount();
+            int newHeaderLength = headerLength(newVersion);
+            result = new byte[cipherInput.length - headerLength + newHeaderLength];
+            System.arraycopy(cipherInput, 0, result, 0, ITERATION_COUNT_INDEX);
+            System.arraycopy(cipherInput, headerLength, result, newHeaderLength, cipherInput.length - headerLength);
+            result[VERSION_INDEX] = newVersion;
+            ByteBuffer.wrap(result).putInt(ITERATION_COUNT_INDEX, iterations);
+        }
+        System.arraycopy(salt, 0, result, VERSION_LEN, SALT_LEN);
+        System.arraycopy(createVerifier(newVersion, newKey, salt, iterations, chunkLength), 0, result, VERIFIER_INDEX, VERIFIER_LEN);
+        System.arraycopy(wrap(newVersion, newKey, salt, dataKey, iterations), 0, result, WRAPPED_KEY_INDEX, WRAPPED_KEY_LEN);
+        return result;
+    }
+
+    /**
+     * Returns the version, salt, IV and key verifier of a cipher input of version {@value #VERSION_VERIFIED} or later and {@code null} for earlier versions.
+     * The iteration count follows for version {@value #VERSION_CALIBRATED} and the chunk length and iteration count for version {@value #VERSION_SUBKEYS}.
+     */
+    @Override
+    public byte[] getKeyVerifier(byte[] cipherInput) {
+        if (cipherInput.length < WRAPPED_KEY_INDEX || VERSION_PBE == cipherInput[VERSION_INDEX]) {
+            return null;
+        }
+        if (VERSION_CALIBRATED == cipherInput[VERSION_INDEX] && cipherInput.length >= ITERATION_COUNT_INDEX + Integer.BYTES) {
+            return ByteBuffer.allocate(WRAPPED_KEY_INDEX + Integer.BYTES).put(cipherInput, 0, WRAPPED_KEY_INDEX)
+                    .put(cipherInput, ITERATION_COUNT_INDEX, Integer.BYTES).array();
+        }
+        if (VERSION_SUBKEYS == cipherInput[VERSION_INDEX] && cipherInput.length >= ITERATION_COUNT_INDEX + Integer.BYTES) {
+            return ByteBuffer.allocate(WRAPPED_KEY_INDEX + 2 * Integer.BYTES).put(cipherInput, 0, WRAPPED_KEY_INDEX)
+                    .put(cipherInput, CHUNK_LENGTH_INDEX, 2 * Integer.BYTES).array();
+        }
+        return Arrays.copyOf(cipherInput, WRAPPED_KEY_INDEX);
+    }
+
+    @Override
+    public boolean verifyKey(char[] key, byte[] keyVerifier) throws GeneralSecurityException {
+        if (null == keyCache) {
+            throw new NoSuchAlgorithmException("Key verifiers are not supported with " + PBE_ALGO);
+        }
+        byte[] salt = Arrays.copyOfRange(keyVerifier, VERSION_LEN, VERSION_LEN + SALT_LEN);
+        byte[] expected = Arrays.copyOfRange(keyVerifier, VERIFIER_INDEX, VERIFIER_INDEX + VERIFIER_LEN);
+        byte version = keyVerifier[VERSION_INDEX];
+        ByteBuffer buffer = ByteBuffer.wrap(keyVerifier);
+        int chunkLength = VERSION_SUBKEYS <= version ? buffer.getInt(WRAPPED_KEY_INDEX) : 0;
+        int iterations = iterationCount(version, buffer, VERSION_SUBKEYS <= version ? WRAPPED_KEY_INDEX + Integer.BYTES : WRAPPED_KEY_INDEX);
+        return MessageDigest.isEqual(expected, createVerifier(version, key, salt, iterations, chunkLength));
+    }
+
+    private byte encryptionVersion() {
+        return null != keyCache ? VERSION_SUBKEYS : VERSION_PBE;
+    }
+
+    /**
+     * Returns the iteration count of new cipher inputs, calibrated on first use.
+     */
+    private int iterationCount() throws GeneralSecurityException {
+        int count = iterationCount;
+        if (0 == count) {
+            count = kdfTarget.isZero() ? ITERATION_COUNT : KdfCalibration.calibrate(KDF_ALGO, KEY_LEN, kdfTarget, ITERATION_COUNT);
+            iterationCount = count;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the iteration count stored at the given index for version {@value #VERSION_CALIBRATED} and later and the configured one for earlier versions.
+     */
+    private static int iterationCount(byte version, ByteBuffer buffer, int index) throws GeneralSecurityException {
+        if (VERSION_CALIBRATED > version) {
+            return ITERATION_COUNT;
+        }
+        int iterations = buffer.getInt(index);
+        if (iterations <= 0 || iterations > MAX_ITERATION_COUNT) {
+            throw new GeneralSecurityException("Invalid iteration count " + iterations);
+        }
+        return iterations;
+    }
+
+    private static int headerLength(byte version) throws GeneralSecurityException {
+        return switch (version) {
+            case VERSION_PBE -> VERIFIER_INDEX;
+            case VERSION_VERIFIED -> WRAPPED_KEY_INDEX;
+            case VERSION_ENVELOPE -> WRAPPED_KEY_INDEX + WRAPPED_KEY_LEN;
+            case VERSION_CHUNKED -> ITERATION_COUNT_INDEX;
+            case VERSION_CALIBRATED, VERSION_SUBKEYS -> ITERATION_COUNT_INDEX + Integer.BYTES;
+            default -> throw new GeneralSecurityException("Unsupported format version " + version);
+        };
+    }
+
+    /**
+     * The parameters of a cipher input. Versions before {@value #VERSION_ENVELOPE} have no data key and versions before {@value #VERSION_CHUNKED} have no
+     * chunk length.
+     */
+    private record Header(byte version, byte[] salt, byte[] iv, SecretKey dataKey, int chunkLength) {
+    }
+
+    /**
+     * Generates the parameters of a new cipher input, including a fresh salt, and puts its header into the given buffer.
+     */
+    private Header writeHeader(char[] key, ByteBuffer header) throws GeneralSecurityException {
+        int iterations = null != keyCache ? iterationCount() : ITERATION_COUNT;
         byte[] salt = new byte[SALT_LEN];
         secureRandom.nextBytes(salt);
 
         byte[] iv = new byte[IV_LEN];
         secureRandom.nextBytes(iv);
 
-        Cipher pbeCipher = createCipher(Cipher.ENCRYPT_MODE, key, salt, iv);
-        byte[] ciphertext = pbeCipher.doFinal(data);
-        return addParameters(salt, iv, ciphertext);
+        byte version = encryptionVersion();
+        header.put(version).put(salt).put(iv);
+        if (null == keyCache) {
+            return new Header(version, salt, iv, null, 0);
+        }
+        byte[] dataKeyBytes = new byte[KEY_LEN / 8];
+        secureRandom.nextBytes(dataKeyBytes);
+        SecretKey dataKey = new SecretKeySpec(dataKeyBytes, "AES");
+        Arrays.fill(dataKeyBytes, (byte) 0);
+        header.put(createVerifier(version, key, salt, iterations, CHUNK_LEN)).put(wrap(version, key, salt, dataKey, iterations)).putInt(CHUNK_LEN)
+                .putInt(iterations);
+        return new Header(version, salt, iv, dataKey, CHUNK_LEN);
     }
 
-    @Override
-    public byte[] decrypt(char[] key, byte[] cipherInput) throws GeneralSecurityException {
-        byte[] salt = Arrays.copyOfRange(cipherInput, VERSION_LEN, VERSION_LEN + SALT_LEN);
-        byte[] iv = Arrays.copyOfRange(cipherInput, VERSION_LEN + SALT_LEN, VERSION_LEN + SALT_LEN + IV_LEN);
-        byte[] cipherText = Arrays.copyOfRange(cipherInput, VERSION_LEN + SALT_LEN + IV_LEN, cipherInput.length);
+    /**
+     * Parses the header at the position of the given buffer and checks the key. The buffer is left positioned at the cipher text.
+     */
+    private Header readHeader(char[] key, ByteBuffer header) throws GeneralSecurityException {
+        int start = header.position();
+        byte version = header.get();
+        if (header.limit() - start < headerLength(version)) {
+            throw new GeneralSecurityException("The cipher input ends in its header!");
+        }
+        byte[] salt = new byte[SALT_LEN];
+        header.get(salt);
+        byte[] iv = new byte[IV_LEN];
+        header.get(iv);
+        if (VERSION_PBE == version) {
+            return new Header(version, salt, iv, null, 0);
+        }
+        if (null == keyCache) {
+            throw new NoSuchAlgorithmException("Format version " + version + " is not supported with " + PBE_ALGO);
+        }
+        int iterations = iterationCount(version, header, start + ITERATION_COUNT_INDEX);
+        int chunkLength = VERSION_CHUNKED <= version ? header.getInt(start + CHUNK_LENGTH_INDEX) : 0;
+        byte[] verifier = new byte[VERIFIER_LEN];
+        header.get(verifier);
+        checkKey(version, key, salt, verifier, iterations, chunkLength);
+        if (VERSION_VERIFIED == version) {
+            return new Header(version, salt, iv, null, 0);
+        }
+        byte[] wrappedKey = new byte[WRAPPED_KEY_LEN];
+        header.get(wrappedKey);
+        if (VERSION_CHUNKED <= version && chunkLength <= 0) {
+            throw new GeneralSecurityException("Invalid chunk length " + chunkLength);
+        }
+        header.position(start + headerLength(version));
+        return new Header(version, salt, iv, unwrap(version, key, salt, wrappedKey, iterations), chunkLength);
+    }
+
+    /**
+     * Returns the cipher for the cipher text of a version {@value #VERSION_PBE} to {@value #VERSION_ENVELOPE} cipher input. Pass it to
+     * {@link #release(Cipher)} after use.
+     */
+    private Cipher createDecryptionCipher(char[] key, Header header) throws GeneralSecurityException {
+        if (null != header.dataKey()) {
+            return createCipher(Cipher.DECRYPT_MODE, header.dataKey(), header.iv());
+        }
+        if (null != keyCache) {
+            return createCipher(Cipher.DECRYPT_MODE, keyCache.get(key, header.salt(), ITERATION_COUNT), header.iv());
+        }
+        return createPbeCipher(Cipher.DECRYPT_MODE, key, header.salt(), header.iv());
+    }
+
+    private void checkKey(byte version, char[] key, byte[] salt, byte[] verifier, int iterations, int chunkLength) throws GeneralSecurityException {
+        if (!MessageDigest.isEqual(verifier, createVerifier(version, key, salt, iterations, chunkLength))) {
+            throw new BadPaddingException("The key does not match the key verifier or the header has been tampered with!");
+        }
+    }
 
-        Cipher pbeCipher = createCipher(Cipher.DECRYPT_MODE, key, salt, iv);
-        return pbeCipher.doFinal(cipherText);
+    /**
+     * Returns the key verifier, a MAC of the version, chunk length and iteration count with the verifier subkey from version {@value #VERSION_SUBKEYS} and a
+     * MAC of a fixed text with the derived key before.
+     */
+    private byte[] createVerifier(byte version, char[] key, byte[] salt, int iterations, int chunkLength) throws GeneralSecurityException {
+        if (VERSION_SUBKEYS > version) {
+            return createVerifier(keyCache.get(key, salt, iterations), VERIFIER_TEXT);
+        }
+        Subkey verifierKey = subkey(key, salt, iterations, VERIFIER_TEXT, VERIFIER_KEY_LEN, VERIFIER_MAC_ALGO);
+        try {
+            byte[] authenticatedFields = ByteBuffer.allocate(VERSION_LEN + 2 * Integer.BYTES).put(version).putInt(chunkLength).putInt(iterations).array();
+            return createVerifier(verifierKey, authenticatedFields);
+        } finally {
+            verifierKey.destroy();
+        }
+    }
+
+    private static byte[] createVerifier(SecretKey verifierKey, byte[] input) throws GeneralSecurityException {
+        Mac mac = CryptoPrimitives.mac(VERIFIER_MAC_ALGO);
+        try {
+            mac.init(verifierKey);
+            return Arrays.copyOf(mac.doFinal(input), VERIFIER_LEN);
+        } finally {
+            CryptoPrimitives.release(mac);
+        }
     }
 
-    private Cipher createCipher(int mode, char[] key, byte[] salt, byte[] iv) throws GeneralSecurityException {
+    private byte[] wrap(byte version, char[] key, byte[] salt, SecretKey dataKey, int iterations) throws GeneralSecurityException {
+        Cipher keyWrapCipher = CryptoPrimitives.cipher(KEY_WRAP_ALGO);
+        SecretKey wrappingKey = wrappingKey(version, key, salt, iterations);
+        try {
+            keyWrapCipher.init(Cipher.WRAP_MODE, wrappingKey);
+            return keyWrapCipher.wrap(dataKey);
+        } finally {
+            CryptoPrimitives.release(keyWrapCipher);
+            if (wrappingKey instanceof Subkey subkey) {
+                subkey.destroy();
+            }
+        }
+    }
+
+    private SecretKey unwrap(byte version, char[] key, byte[] salt, byte[] wrappedKey, int iterations) throws GeneralSecurityException {
+        Cipher keyWrapCipher = CryptoPrimitives.cipher(KEY_WRAP_ALGO);
+        SecretKey wrappingKey = wrappingKey(version, key, salt, iterations);
+        try {
+            keyWrapCipher.init(Cipher.UNWRAP_MODE, wrappingKey);
+            return (SecretKey) keyWrapCipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+        } finally {
+            CryptoPrimitives.release(keyWrapCipher);
+            if (wrappingKey instanceof Subkey subkey) {
+                subkey.destroy();
+            }
+        }
+    }
+
+    /**
+     * Returns the key which wraps the data key, the key wrap subkey from version {@value #VERSION_SUBKEYS} and the derived key before.
+     */
+    private SecretKey wrappingKey(byte version, char[] key, byte[] salt, int iterations) throws GeneralSecurityException {
+        if (VERSION_SUBKEYS > version) {
+            return keyCache.get(key, salt, iterations);
+        }
+        return subkey(key, salt, iterations, KEY_WRAP_LABEL, KEY_LEN / 8, "AES");
+    }
+
+    /**
+     * Expands a subkey from the derived key with HKDF-Expand (RFC 5869), using the label as the info. The subkeys are at most one block of
+     * {@value #VERIFIER_MAC_ALGO} long, so the expansion is a single MAC. Destroy the subkey after use.
+     */
+    private Subkey subkey(char[] key, byte[] salt, int iterations, byte[] label, int length, String algorithm) throws GeneralSecurityException {
+        Mac mac = CryptoPrimitives.mac(VERIFIER_MAC_ALGO);
+        byte[] block = null;
+        try {
+            mac.init(keyCache.get(key, salt, iterations));
+            mac.update(label);
+            mac.update((byte) 1);
+            block = mac.doFinal();
+            return new Subkey(Arrays.copyOf(block, length), algorithm);
+        } finally {
+            CryptoPrimitives.release(mac);
+            if (null != block) {
+                Arrays.fill(block, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Initializes the pooled AES cipher, which is equivalent to the PBE one given the derived key.
+     */
+    private static Cipher createCipher(int mode, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = CryptoPrimitives.cipher(AES_CIPHER_ALGO);
+        try {
+            cipher.init(mode, key, new IvParameterSpec(iv));
+            return cipher;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            CryptoPrimitives.release(cipher);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases a cipher returned by {@link #createDecryptionCipher(char[], Header)}. Only the AES one is pooled, PBE ciphers are left to the garbage
+     * collector.
+     */
+    private static void release(Cipher cipher) {
+        if (AES_CIPHER_ALGO.equals(cipher.getAlgorithm())) {
+            CryptoPrimitives.release(cipher);
+        }
+    }
+
+    /**
+     * Creates a PBE cipher, which is not pooled. It is used only for version {@value #VERSION_PBE} and for PBE algorithms which cannot be split into a key
+     * derivation and a cipher.
+     */
+    private Cipher createPbeCipher(int mode, char[] key, byte[] salt, byte[] iv) throws GeneralSecurityException {
         PBEKeySpec pbeKeySpec = new PBEKeySpec(key);
-        SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(PBE_ALGO);
+        SecretKeyFactory secretKeyFactory = CryptoPrimitives.secretKeyFactory(PBE_ALGO);
         SecretKey secretKey = secretKeyFactory.generateSecret(pbeKeySpec);
 
         PBEParameterSpec pbeParamSpec = new PBEParameterSpec(salt, ITERATION_COUNT, new IvParameterSpec(iv));
@@ -96,24 +615,111 @@ public class SimpleCipher implements CryptoService {
         return pbeCipher;
     }
 
-    private byte[] addParameters(byte[] salt, byte[] iv, byte[] cipherText) {
-        byte[] result = new byte[VERSION_LEN + salt.length + iv.length + cipherText.length];
-        result[VERSION_INDEX] = 0;
-        for (int i = VERSION_LEN, j = 0; j < salt.length; i++, j++) {
-            result[i] = salt[j];
+    /**
+     * Runs the cipher over the source in chunks of {@value #STREAM_BUFFER_LEN} bytes and writes the output to the target. The two buffers are reused for
+     * every chunk.
+     */
+    private static void transform(Cipher cipher, ReadableByteChannel source, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        ByteBuffer input = ByteBuffer.allocateDirect(STREAM_BUFFER_LEN);
+        ByteBuffer output = ByteBuffer.allocateDirect(cipher.getOutputSize(STREAM_BUFFER_LEN + cipher.getBlockSize()));
+        while (-1 != source.read(input)) {
+            cipher.update(input.flip(), output);
+            writeFully(target, output.flip());
+            input.clear();
+            output.clear();
         }
-        for (int i = (VERSION_LEN + salt.length), j = 0; j < iv.length; i++, j++) {
-            result[i] = iv[j];
+        cipher.doFinal(input.flip(), output);
+        writeFully(target, output.flip());
+    }
+
+    private static void readFully(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (-1 == source.read(buffer)) {
+                throw new EOFException("The cipher input ends in its header!");
+            }
         }
-        for (int i = (VERSION_LEN + salt.length + iv.length), j = 0; j < cipherText.length; i++, j++) {
-            result[i] = cipherText[j];
+    }
+
+    private static void writeFully(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns the array of a heap buffer without copying it if the buffer spans the whole array.
+     */
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = buffer.array();
+        return array.length == buffer.remaining() ? array : Arrays.copyOf(array, buffer.remaining());
+    }
+
+    /**
+     * A subkey which, unlike a {@link SecretKeySpec}, zeroes its key material when destroyed.
+     */
+    private static final class Subkey implements SecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient byte[] keyMaterial;
+
+        private final String algorithm;
+
+        private transient boolean destroyed;
+
+        private Subkey(byte[] keyMaterial, String algorithm) {
+            this.keyMaterial = keyMaterial;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            if (destroyed) {
+                throw new IllegalStateException("The subkey has been destroyed!");
+            }
+            return keyMaterial.clone();
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+            Arrays.fill(keyMaterial, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            throw new NotSerializableException(Subkey.class.getName());
+        }
+    }
+
+    @Override
+    public void clearKeys() {
+        if (null != keyCache) {
+            keyCache.clear();
         }
-        return result;
     }
 
     @Override
     public char[] digest(char[] input) throws GeneralSecurityException {
-        MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGO);
+        MessageDigest messageDigest = CryptoPrimitives.messageDigest(DIGEST_ALGO);
         ByteBuffer inputByteBuffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(input));
         byte[] digest = messageDigest.digest(inputByteBuffer.array());
         char[] hexDigits = "0123456789abcdef".toCharArray();
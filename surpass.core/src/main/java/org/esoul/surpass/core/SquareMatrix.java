@@ -21,16 +21,17 @@
 */
 package org.esoul.surpass.core;
 
-import java.nio.CharBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 import org.esoul.surpass.table.api.EmptySequenceException;
 import org.esoul.surpass.table.api.MaxSizeExceededException;
+import org.esoul.surpass.table.api.RowMutation;
 import org.esoul.surpass.table.api.SecretTable;
+import org.esoul.surpass.table.api.SecretTableSnapshot;
 
 /**
  * This {@link SecretTable} implementation is backed by a square matrix. The idea is that the size of the data remains constant regardless of the number and
@@ -40,8 +41,14 @@ import org.esoul.surpass.table.api.SecretTable;
  * [secret length - 1 byte][secret - up to 63 bytes][identifier length - 1 byte][identifier - up to 63 bytes][note length - 1 byte][note - up to 127 bytes]
  * </pre>
  * 
- * Unused positions are automatically filled with random bytes. The last row contains service data such as the number of used rows and the version of the format
- * or storage scheme. The focus is on simplicity at the expense of flexibility. This class is thread-safe.
+ * Unused positions are filled with random bytes in the one dimensional form. In memory they are zero, the random bytes are generated in a single pass only when
+ * the table is serialized, so neither creating nor writing the table costs any random bytes. The last row contains service data such as the number of used rows
+ * and the version of the format or storage scheme. The focus is on simplicity at the expense of flexibility. This class is thread-safe. Writers are serialized,
+ * readers use optimistic reads and never block each other. All rows are kept in a single array and each slot is mapped to its row by an offset, so moving a row
+ * only updates the offset and loading the table is a bulk copy. Snapshots share the array with the table, it is copied only when the table is modified after a
+ * snapshot was taken. Removing a row only marks its slot as dead in a bitmap of the live slots and wipes it, so the row indices of the API are mapped to slots
+ * by skipping the dead ones. The dead slots are moved out of the way when there are too many of them, when the table is full or before a snapshot, so the one
+ * dimensional form always contains the used rows contiguously.
  *
  * @author mgp
  */
@@ -64,12 +71,19 @@ public class SquareMatrix implements SecretTable {
 
     public static final int SERVICE_ROW = MAX_ROW;
 
+    private static final int ROW_LEN = MAX_COL + 1;
+
+    private static final int TABLE_LEN = (MAX_ROW + 1) * ROW_LEN;
+
     /** For future format versions. */
     @SuppressWarnings("unused")
     private static final int SERVICE_COL_VERSION = 0;
 
     private static final int SERVICE_COL_NEXT_ROW = 1;
 
+    /** Dead slots reaching this number trigger compaction. */
+    private static final int COMPACTION_THRESHOLD = 32;
+
     public static final int MAX_SECRET_LEN = 63;
     public static final int MAX_IDENTIFIER_LEN = 63;
     public static final int MAX_NOTE_LEN = 127;
@@ -89,128 +103,222 @@ public class SquareMatrix implements SecretTable {
     private static final Column NOTE_LEN = new Column(INDEX_NOTE_LEN, 1);
     private static final Column NOTE = new Column(INDEX_NOTE, MAX_NOTE_LEN);
 
-    private final byte[][] table = new byte[MAX_ROW + 1][MAX_COL + 1];
+    private byte[] table = new byte[TABLE_LEN];
+
+    /** The offset of the row of each slot in {@link #table}. */
+    private final int[] rowOffsets = new int[MAX_ROW + 1];
 
     private final SecureRandom secureRandom = new SecureRandom();
 
-    private final Lock lock = new ReentrantLock();
+    private final StampedLock lock = new StampedLock();
+
+    /** Set by a snapshot, {@link #table} is shared with it and is copied before it is modified. */
+    private boolean shared;
+
+    /** One bit per slot, set for the live rows. The service row is never set. */
+    private final long[] liveSlots = new long[(MAX_ROW + 1) / Long.SIZE];
+
+    private int deadSlots;
+
+    private final IdentifierIndex identifierIndex = new IdentifierIndex();
 
-    /**
-     * Fills the table with random bytes except for the service row.
-     */
     public SquareMatrix() {
-        fillWithRandomBytesExceptForTheServiceRow();
+        resetRowOffsets();
     }
 
-    private void fillWithRandomBytesExceptForTheServiceRow() {
-        for (int i = 0; i < SERVICE_ROW - 1; i++) {
-            secureRandom.nextBytes(table[i]);
+    private void resetRowOffsets() {
+        for (int slot = 0; slot < rowOffsets.length; slot++) {
+            rowOffsets[slot] = slot * ROW_LEN;
         }
     }
 
     /**
-     * For testing purposes. Not lock-protected.
+     * For testing purposes.
      *
-     * @return A direct reference to the current table.
+     * @return A copy of the current table, one array per slot.
      */
     public byte[][] getBytes() {
-        return table;
+        long stamp = lock.readLock();
+        try {
+            byte[][] rows = new byte[MAX_ROW + 1][];
+            for (int slot = 0; slot < rows.length; slot++) {
+                rows[slot] = Arrays.copyOfRange(table, rowOffsets[slot], rowOffsets[slot] + ROW_LEN);
+            }
+            return rows;
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     @Override
     public void createRow(char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
-        byte[] secretBytes = encodeAndClear(secret);
-        validateSecret(secretBytes);
-        byte[] identifierBytes = encodeAndClear(identifier);
-        validateIdentifier(identifierBytes);
-        byte[] noteBytes = encodeAndClear(note);
-        validateNote(noteBytes);
-        lock.lock();
+        byte[] secretBytes = RowCodec.encodeAndClear(secret);
+        RowCodec.validateSecret(secretBytes);
+        byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+        RowCodec.validateIdentifier(identifierBytes);
+        byte[] noteBytes = RowCodec.encodeAndClear(note);
+        RowCodec.validateNote(noteBytes);
+        long stamp = lock.writeLock();
         try {
-            int row = nextRow();
-            writeSecretLength(row, secretBytes);
-            writeSecret(row, secretBytes);
-            writeIdentifierLength(row, identifierBytes);
-            writeIdentifier(row, identifierBytes);
-            writeNoteLength(row, noteBytes);
-            writeNote(row, noteBytes);
+            insertRow(secretBytes, identifierBytes, noteBytes);
         } finally {
-            lock.unlock();
+            lock.unlockWrite(stamp);
         }
     }
 
+    private void insertRow(byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) throws MaxSizeExceededException {
+        int slot = nextRow();
+        setLive(slot);
+        writeRow(slot, secretBytes, identifierBytes, noteBytes);
+        identifierIndex.put(slot, identifierBytes);
+    }
+
     @Override
     public void updateRow(int row, char[] secret, char[] identifier, char[] note) throws MaxSizeExceededException, EmptySequenceException {
-        lock.lock();
+        long stamp = lock.writeLock();
         try {
-            if (row >= getRowNumber()) {
+            if (row >= rowNumber()) {
                 throw new IllegalArgumentException("Nonexistent row " + row);
             }
 
             byte[] secretBytes = null;
             if (null != secret) {
-                secretBytes = encodeAndClear(secret);
-                validateSecret(secretBytes);
+                secretBytes = RowCodec.encodeAndClear(secret);
+                RowCodec.validateSecret(secretBytes);
             }
-            byte[] identifierBytes = encodeAndClear(identifier);
-            validateIdentifier(identifierBytes);
-            byte[] noteBytes = encodeAndClear(note);
-            validateNote(noteBytes);
-
-            if (null != secretBytes) {
-                writeSecretLength(row, secretBytes);
-                writeSecret(row, secretBytes);
-            }
-            writeIdentifierLength(row, identifierBytes);
-            writeIdentifier(row, identifierBytes);
-            writeNoteLength(row, noteBytes);
-            writeNote(row, noteBytes);
+            byte[] identifierBytes = RowCodec.encodeAndClear(identifier);
+            RowCodec.validateIdentifier(identifierBytes);
+            byte[] noteBytes = RowCodec.encodeAndClear(note);
+            RowCodec.validateNote(noteBytes);
+
+            replaceRow(row, secretBytes, identifierBytes, noteBytes);
         } finally {
-            lock.unlock();
+            lock.unlockWrite(stamp);
         }
     }
 
-    private byte[] encodeAndClear(char[] input) {
-        byte[] data = StandardCharsets.UTF_8.encode(CharBuffer.wrap(input)).array();
-        Arrays.fill(input, '\0');
-        return data;
+    private void replaceRow(int row, byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) {
+        int slot = slot(row);
+        writeRow(slot, secretBytes, identifierBytes, noteBytes);
+        identifierIndex.put(slot, identifierBytes);
     }
 
-    private void validateSecret(byte[] secretBytes) throws MaxSizeExceededException, EmptySequenceException {
-        if (0 == secretBytes.length) {
-            throw new EmptySequenceException("Secret cannot be empty!");
+    /**
+     * Writes the cells of a given slot. The secret is not written if it is {@code null}.
+     */
+    private void writeRow(int slot, byte[] secretBytes, byte[] identifierBytes, byte[] noteBytes) {
+        if (null != secretBytes) {
+            writeSecretLength(slot, secretBytes);
+            writeSecret(slot, secretBytes);
         }
-        if (secretBytes.length > MAX_SECRET_LEN) {
-            throw new MaxSizeExceededException("Secret cannot exceed " + MAX_SECRET_LEN + " bytes!");
+        writeIdentifierLength(slot, identifierBytes);
+        writeIdentifier(slot, identifierBytes);
+        writeNoteLength(slot, noteBytes);
+        writeNote(slot, noteBytes);
+    }
+
+    @Override
+    public void applyBatch(List<RowMutation> mutations) throws MaxSizeExceededException, EmptySequenceException {
+        List<EncodedMutation> encodedMutations = EncodedMutation.encodeAll(mutations);
+        long stamp = lock.writeLock();
+        try {
+            EncodedMutation.checkRows(encodedMutations, rowNumber(), MAX_ROW);
+            for (EncodedMutation encodedMutation : encodedMutations) {
+                switch (encodedMutation.mutation()) {
+                    case RowMutation.Create _ -> insertRow(encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Update update -> replaceRow(update.row(), encodedMutation.secret(), encodedMutation.identifier(), encodedMutation.note());
+                    case RowMutation.Remove remove -> deleteRow(remove.row());
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+            EncodedMutation.wipe(encodedMutations);
         }
     }
 
-    private void validateIdentifier(byte[] identifierBytes) throws MaxSizeExceededException, EmptySequenceException {
-        if (0 == identifierBytes.length) {
-            throw new EmptySequenceException("Identifier cannot be empty!");
+    private int nextRow() throws MaxSizeExceededException {
+        if (slotNumber() >= MAX_ROW && 0 < deadSlots) {
+            compact();
         }
-        if (identifierBytes.length > MAX_IDENTIFIER_LEN) {
-            throw new MaxSizeExceededException("Identifier cannot exceed " + MAX_IDENTIFIER_LEN + " bytes!");
+        byte nextRow = table[rowOffsets[SERVICE_ROW] + SERVICE_COL_NEXT_ROW];
+        if (Byte.toUnsignedInt(nextRow) >= MAX_ROW) {
+            throw new MaxSizeExceededException("Maximum number of secrets reached! " + Byte.toUnsignedInt(nextRow));
         }
+        mutableTable()[rowOffsets[SERVICE_ROW] + SERVICE_COL_NEXT_ROW] = (byte) (nextRow + (byte) 1);
+        return Byte.toUnsignedInt(nextRow);
     }
 
-    private void validateNote(byte[] noteBytes) throws MaxSizeExceededException {
-        if (noteBytes.length > MAX_NOTE_LEN) {
-            throw new MaxSizeExceededException("Note cannot exceed " + MAX_NOTE_LEN + " bytes!");
+    /**
+     * Returns the slot of a given row, i.e. the position of the row-th set bit in the bitmap of the live slots.
+     */
+    private int slot(int row) {
+        int remaining = row;
+        for (int word = 0; word < liveSlots.length; word++) {
+            int liveInWord = Long.bitCount(liveSlots[word]);
+            if (remaining < liveInWord) {
+                return word * Long.SIZE + Long.numberOfTrailingZeros(Long.expand(1L << remaining, liveSlots[word]));
+            }
+            remaining -= liveInWord;
         }
+        throw new IllegalArgumentException("Nonexistent row " + row);
     }
 
-    private int nextRow() throws MaxSizeExceededException {
-        byte nextRow = table[SERVICE_ROW][SERVICE_COL_NEXT_ROW];
-        if (Byte.toUnsignedInt(nextRow) >= MAX_ROW) {
-            throw new MaxSizeExceededException("Maximum number of secrets reached! " + Byte.toUnsignedInt(nextRow));
+    /**
+     * Returns the row of a given live slot, i.e. the number of live slots before it.
+     */
+    private int row(int slot) {
+        int word = slot / Long.SIZE;
+        int row = Long.bitCount(liveSlots[word] & ((1L << slot) - 1));
+        for (int i = 0; i < word; i++) {
+            row += Long.bitCount(liveSlots[i]);
         }
-        table[SERVICE_ROW][SERVICE_COL_NEXT_ROW] = (byte) (nextRow + (byte) 1);
-        return Byte.toUnsignedInt(nextRow);
+        return row;
+    }
+
+    private boolean isLive(int slot) {
+        return 0L != (liveSlots[slot / Long.SIZE] & (1L << slot));
+    }
+
+    private void setLive(int slot) {
+        liveSlots[slot / Long.SIZE] |= 1L << slot;
+    }
+
+    /**
+     * Moves the live rows to the beginning of the table preserving their order. Only row offsets are moved.
+     */
+    private void compact() {
+        int slotNumber = slotNumber();
+        int nextRow = 0;
+        for (int slot = 0; slot < slotNumber; slot++) {
+            if (isLive(slot)) {
+                if (slot != nextRow) {
+                    swapRows(nextRow, slot);
+                }
+                nextRow++;
+            }
+        }
+        Arrays.fill(liveSlots, 0L);
+        for (int row = 0; row < nextRow; row++) {
+            setLive(row);
+        }
+        deadSlots = 0;
+        mutableTable()[rowOffsets[SERVICE_ROW] + SERVICE_COL_NEXT_ROW] = (byte) nextRow;
+        identifierIndex.compact();
+    }
+
+    /**
+     * Returns the table for writing. The table is copied first if it is shared with a snapshot.
+     */
+    private byte[] mutableTable() {
+        if (shared) {
+            table = table.clone();
+            shared = false;
+        }
+        return table;
     }
 
     private void writeSecretLength(int row, byte[] secretBytes) {
-        table[row][SECRET_LEN.startIndex] = (byte) secretBytes.length;
+        mutableTable()[rowOffsets[row] + SECRET_LEN.startIndex] = (byte) secretBytes.length;
     }
 
     private void writeSecret(int row, byte[] secretBytes) {
@@ -218,7 +326,7 @@ public class SquareMatrix implements SecretTable {
     }
 
     private void writeIdentifierLength(int row, byte[] identifierBytes) {
-        table[row][IDENTIFIER_LEN.startIndex] = (byte) identifierBytes.length;
+        mutableTable()[rowOffsets[row] + IDENTIFIER_LEN.startIndex] = (byte) identifierBytes.length;
     }
 
     private void writeIdentifier(int row, byte[] identifierBytes) {
@@ -226,82 +334,117 @@ public class SquareMatrix implements SecretTable {
     }
 
     private void writeNoteLength(int row, byte[] noteBytes) {
-        table[row][NOTE_LEN.startIndex] = (byte) noteBytes.length;
+        mutableTable()[rowOffsets[row] + NOTE_LEN.startIndex] = (byte) noteBytes.length;
     }
 
     private void writeNote(int row, byte[] noteBytes) {
         writeData(row, NOTE.startIndex, NOTE.columnLength, noteBytes);
     }
 
+    /**
+     * Copies the data and zeroes the rest of the column, so nothing of a previous value remains. The padding is generated on serialization.
+     */
     private void writeData(int row, int startIndex, int columnLength, byte[] bytes) {
-        for (int columnWriteIndex = startIndex, secretReadIndex = 0; columnWriteIndex < (startIndex + columnLength); columnWriteIndex++, secretReadIndex++) {
-            if (secretReadIndex < bytes.length) {
-                table[row][columnWriteIndex] = bytes[secretReadIndex];
-            } else {
-                table[row][columnWriteIndex] = nextRandomByte();
-            }
-        }
-    }
-
-    private byte nextRandomByte() {
-        return (byte) secureRandom.nextInt(256);
+        byte[] mutableTable = mutableTable();
+        int columnIndex = rowOffsets[row] + startIndex;
+        System.arraycopy(bytes, 0, mutableTable, columnIndex, bytes.length);
+        Arrays.fill(mutableTable, columnIndex + bytes.length, columnIndex + columnLength, (byte) 0);
     }
 
+    /**
+     * Copies the row offsets only, the table itself is copied lazily by the next writer.
+     */
     @Override
-    public byte[] toOneDimension() {
-        byte[] sequence = new byte[(MAX_ROW + 1) * (MAX_COL + 1)];
-        int i = 0;
-        lock.lock();
+    public SecretTableSnapshot snapshot() {
+        long stamp = lock.writeLock();
         try {
-            for (byte[] row : table) {
-                for (byte symbol : row) {
-                    sequence[i++] = symbol;
-                }
+            if (0 < deadSlots) {
+                compact();
             }
+            shared = true;
+            return new Snapshot(table, rowOffsets.clone(), secureRandom);
         } finally {
-            lock.unlock();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public byte[] toOneDimension() {
+        try (SecretTableSnapshot snapshot = snapshot()) {
+            return snapshot.toOneDimension();
         }
-        return sequence;
     }
 
     @Override
     public void load(byte[] sequence) {
-        if (sequence.length != ((MAX_ROW + 1) * (MAX_COL + 1))) {
+        if (sequence.length != TABLE_LEN) {
             throw new IllegalArgumentException("Invalid sequence size!");
         }
-        lock.lock();
+        long stamp = lock.writeLock();
         try {
             clear();
-            for (int i = 0, row = 0, col = 0; i < sequence.length; i++) {
-                table[row][col] = sequence[i];
-                if (col < MAX_COL) {
-                    col++;
-                } else {
-                    row++;
-                    col = 0;
-                }
+            System.arraycopy(sequence, 0, table, 0, TABLE_LEN);
+            for (int row = 0; row < slotNumber(); row++) {
+                setLive(row);
             }
+            identifierIndex.load(sequence, 0, slotNumber());
         } finally {
-            lock.unlock();
+            lock.unlockWrite(stamp);
         }
     }
 
+    @Override
+    public void close() {
+        long stamp = lock.writeLock();
+        try {
+            clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Zeroes the table if it is owned by this instance. A table shared with a snapshot is left intact and replaced with a new one.
+     */
     private void clear() {
-        for (byte[] row : table) {
-            Arrays.fill(row, (byte) 0);
+        if (shared) {
+            table = new byte[TABLE_LEN];
+            shared = false;
+        } else {
+            Arrays.fill(table, (byte) 0);
         }
+        resetRowOffsets();
+        Arrays.fill(liveSlots, 0L);
+        deadSlots = 0;
+        identifierIndex.clear();
     }
 
     @Override
     public int getRowNumber() {
-        lock.lock();
+        long stamp = lock.tryOptimisticRead();
+        int rowNumber = rowNumber();
+        if (lock.validate(stamp)) {
+            return rowNumber;
+        }
+        stamp = lock.readLock();
         try {
-            return Byte.toUnsignedInt(table[SERVICE_ROW][SERVICE_COL_NEXT_ROW]);
+            return rowNumber();
         } finally {
-            lock.unlock();
+            lock.unlockRead(stamp);
         }
     }
 
+    private int rowNumber() {
+        return slotNumber() - deadSlots;
+    }
+
+    /**
+     * Returns the number of used slots, live or dead.
+     */
+    private int slotNumber() {
+        return Byte.toUnsignedInt(table[rowOffsets[SERVICE_ROW] + SERVICE_COL_NEXT_ROW]);
+    }
+
     @Override
     public int getMaxRow() {
         return MAX_ROW;
@@ -309,56 +452,235 @@ public class SquareMatrix implements SecretTable {
 
     @Override
     public byte[] readSecret(int row) {
-        lock.lock();
+        return readCell(row, SECRET_LEN, SECRET);
+    }
+
+    @Override
+    public byte[] readIdentifier(int row) {
+        return readCell(row, IDENTIFIER_LEN, IDENTIFIER);
+    }
+
+    @Override
+    public byte[] readNote(int row) {
+        return readCell(row, NOTE_LEN, NOTE);
+    }
+
+    @Override
+    public int readSecretInto(int row, ByteBuffer dst) {
+        return readCellInto(row, SECRET_LEN, SECRET, dst);
+    }
+
+    @Override
+    public int readIdentifierInto(int row, ByteBuffer dst) {
+        return readCellInto(row, IDENTIFIER_LEN, IDENTIFIER, dst);
+    }
+
+    @Override
+    public int readNoteInto(int row, ByteBuffer dst) {
+        return readCellInto(row, NOTE_LEN, NOTE, dst);
+    }
+
+    @Override
+    public int getSecretLength(int row) {
+        return readLength(row, SECRET_LEN);
+    }
+
+    @Override
+    public int getIdentifierLength(int row) {
+        return readLength(row, IDENTIFIER_LEN);
+    }
+
+    @Override
+    public int getNoteLength(int row) {
+        return readLength(row, NOTE_LEN);
+    }
+
+    @Override
+    public int[] findRowsByIdentifier(byte[] identifier) {
+        long stamp = lock.readLock();
         try {
-            return Arrays.copyOfRange(table[row], SECRET.startIndex, SECRET.startIndex + table[row][SECRET_LEN.startIndex]);
+            int[] rows = identifierIndex.find(identifier);
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = row(rows[i]);
+            }
+            return rows;
         } finally {
-            lock.unlock();
+            lock.unlockRead(stamp);
         }
     }
 
-    @Override
-    public byte[] readIdentifier(int row) {
-        lock.lock();
+    /**
+     * Copies the cell without locking and validates that no write happened in the meantime. Only if there was a concurrent write, the copy is wiped and the
+     * cell is read again under the read lock.
+     */
+    private byte[] readCell(int row, Column lengthColumn, Column dataColumn) {
+        long stamp = lock.tryOptimisticRead();
+        if (0L != stamp) {
+            try {
+                byte[] cell = copyCell(table, rowOffsets[slot(row)], lengthColumn, dataColumn);
+                if (lock.validate(stamp)) {
+                    return cell;
+                }
+                Arrays.fill(cell, (byte) 0);
+            } catch (RuntimeException _) {
+                // An inconsistent state was observed, e.g. a length which was written without its data. Read again under the lock.
+            }
+        }
+        stamp = lock.readLock();
         try {
-            return Arrays.copyOfRange(table[row], IDENTIFIER.startIndex, IDENTIFIER.startIndex + table[row][IDENTIFIER_LEN.startIndex]);
+            return copyCell(table, rowOffsets[slot(row)], lengthColumn, dataColumn);
         } finally {
-            lock.unlock();
+            lock.unlockRead(stamp);
         }
     }
 
-    @Override
-    public byte[] readNote(int row) {
-        lock.lock();
+    /**
+     * Same as {@link #readCell(int, Column, Column)}, but copies the cell to the given buffer.
+     */
+    private int readCellInto(int row, Column lengthColumn, Column dataColumn, ByteBuffer dst) {
+        long stamp = lock.tryOptimisticRead();
+        if (0L != stamp) {
+            int position = dst.position();
+            try {
+                int length = copyCell(table, rowOffsets[slot(row)], lengthColumn, dataColumn, dst);
+                if (lock.validate(stamp)) {
+                    return length;
+                }
+            } catch (RuntimeException _) {
+                // An inconsistent state was observed. Read again under the lock.
+            }
+            for (int i = position; i < dst.position(); i++) {
+                dst.put(i, (byte) 0);
+            }
+            dst.position(position);
+        }
+        stamp = lock.readLock();
+        try {
+            return copyCell(table, rowOffsets[slot(row)], lengthColumn, dataColumn, dst);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int readLength(int row, Column lengthColumn) {
+        long stamp = lock.tryOptimisticRead();
+        if (0L != stamp) {
+            try {
+                int length = table[rowOffsets[slot(row)] + lengthColumn.startIndex];
+                if (lock.validate(stamp)) {
+                    return length;
+                }
+            } catch (RuntimeException _) {
+                // A concurrent removal or compaction was observed. Read again under the lock.
+            }
+        }
+        stamp = lock.readLock();
         try {
-            return Arrays.copyOfRange(table[row], NOTE.startIndex, NOTE.startIndex + table[row][NOTE_LEN.startIndex]);
+            return table[rowOffsets[slot(row)] + lengthColumn.startIndex];
         } finally {
-            lock.unlock();
+            lock.unlockRead(stamp);
         }
     }
 
+    private static int copyCell(byte[] table, int rowOffset, Column lengthColumn, Column dataColumn, ByteBuffer dst) {
+        int length = table[rowOffset + lengthColumn.startIndex];
+        dst.put(table, rowOffset + dataColumn.startIndex, length);
+        return length;
+    }
+
+    private static byte[] copyCell(byte[] table, int rowOffset, Column lengthColumn, Column dataColumn) {
+        int dataIndex = rowOffset + dataColumn.startIndex;
+        return Arrays.copyOfRange(table, dataIndex, dataIndex + table[rowOffset + lengthColumn.startIndex]);
+    }
+
     @Override
     public void removeRow(int row) {
-        lock.lock();
+        long stamp = lock.writeLock();
         try {
-            if (row >= getRowNumber()) {
+            if (row >= rowNumber()) {
                 throw new IllegalArgumentException("Nonexistent row " + row);
             }
 
-            int lastRowIndex = table[SERVICE_ROW][SERVICE_COL_NEXT_ROW] - (byte) 1;
-            for (int i = row; i < lastRowIndex; i++) {
-                swapRows(i, i + 1);
-            }
-
-            table[SERVICE_ROW][SERVICE_COL_NEXT_ROW] = (byte) lastRowIndex;
+            deleteRow(row);
         } finally {
-            lock.unlock();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void deleteRow(int row) {
+        int slot = slot(row);
+        identifierIndex.remove(slot);
+        liveSlots[slot / Long.SIZE] &= ~(1L << slot);
+        Arrays.fill(mutableTable(), rowOffsets[slot], rowOffsets[slot] + ROW_LEN, (byte) 0);
+        deadSlots++;
+        if (deadSlots >= COMPACTION_THRESHOLD) {
+            compact();
         }
     }
 
     private void swapRows(int fromIndex, int toIndex) {
-        byte[] localFromRow = table[fromIndex];
-        table[fromIndex] = table[toIndex];
-        table[toIndex] = localFromRow;
+        int localFromOffset = rowOffsets[fromIndex];
+        rowOffsets[fromIndex] = rowOffsets[toIndex];
+        rowOffsets[toIndex] = localFromOffset;
+    }
+
+    private static final class Snapshot implements SecretTableSnapshot {
+
+        private final byte[] table;
+
+        private final int[] rowOffsets;
+
+        private final SecureRandom secureRandom;
+
+        private Snapshot(byte[] table, int[] rowOffsets, SecureRandom secureRandom) {
+            this.table = table;
+            this.rowOffsets = rowOffsets;
+            this.secureRandom = secureRandom;
+        }
+
+        @Override
+        public int getRowNumber() {
+            return Byte.toUnsignedInt(table[rowOffsets[SERVICE_ROW] + SERVICE_COL_NEXT_ROW]);
+        }
+
+        @Override
+        public byte[] readSecret(int row) {
+            return copyCell(table, rowOffsets[row], SECRET_LEN, SECRET);
+        }
+
+        @Override
+        public byte[] readIdentifier(int row) {
+            return copyCell(table, rowOffsets[row], IDENTIFIER_LEN, IDENTIFIER);
+        }
+
+        @Override
+        public byte[] readNote(int row) {
+            return copyCell(table, rowOffsets[row], NOTE_LEN, NOTE);
+        }
+
+        /**
+         * Generates the random bytes for the whole sequence at once and copies only the used part of each cell of the used rows over them. The service row is
+         * copied as is.
+         */
+        @Override
+        public byte[] toOneDimension() {
+            byte[] sequence = new byte[TABLE_LEN];
+            secureRandom.nextBytes(sequence);
+            for (int row = 0; row < getRowNumber(); row++) {
+                copyUsedPart(row, SECRET_LEN, sequence);
+                copyUsedPart(row, IDENTIFIER_LEN, sequence);
+                copyUsedPart(row, NOTE_LEN, sequence);
+            }
+            System.arraycopy(table, rowOffsets[SERVICE_ROW], sequence, SERVICE_ROW * ROW_LEN, ROW_LEN);
+            return sequence;
+        }
+
+        /**
+         * Copies the length of a cell followed by its data.
+         */
+        private void copyUsedPart(int row, Column lengthColumn, byte[] sequence) {
+            int index = rowOffsets[row] + lengthColumn.startIndex;
+            System.arraycopy(table, index, sequence, row * ROW_LEN + lengthColumn.startIndex, 1 + table[index]);
+        }
     }
 }
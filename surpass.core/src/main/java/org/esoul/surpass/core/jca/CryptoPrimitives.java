@@ -0,0 +1,152 @@
+/*
+   Copyright 2017-2026 e-soul.org
+   All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without modification, are permitted
+   provided that the following conditions are met:
+
+   1. Redistributions of source code must retain the above copyright notice, this list of conditions
+      and the following disclaimer.
+   2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+      and the following disclaimer in the documentation and/or other materials provided with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY EXPRESS OR IMPLIED
+   WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+   FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+   FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+   BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+   BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+   LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+   SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.esoul.surpass.core.jca;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Per-thread pools of JCA engines, so that the provider lookup of {@code getInstance} happens once per thread and algorithm instead of on every operation.
+ * An instance belongs to the calling thread and must not be used after the next request for the same algorithm on the same thread.
+ * <p>
+ * Ciphers and MACs are returned as they were left by {@link #release(Cipher)} and {@link #release(Mac)} and must be initialized with the caller's key, which
+ * resets them. Callers release them in a {@code finally} block as soon as they are done, which re-initializes them with a constant throwaway key, so the pool
+ * never holds on to a key between two uses. Message digests are reset before they are returned. Secret key factories hold no state.
+ * <p>
+ * The package is exported only to the modules of this project which need it.
+ *
+ * @author mgp
+ */
+public final class CryptoPrimitives {
+
+    /** Replaces the key of a released cipher or MAC. It protects nothing. */
+    private static final byte[] THROWAWAY_KEY = new byte[16];
+
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, Mac>> MACS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> SECRET_KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
+    private CryptoPrimitives() {
+        // do nothing
+    }
+
+    /**
+     * Returns the pooled cipher of the calling thread. Supported are AES with the CBC and GCM modes and AESWrap. Pass it to {@link #release(Cipher)} after
+     * use.
+     */
+    public static Cipher cipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transformation);
+        if (null == cipher) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Re-initializes a cipher returned by {@link #cipher(String)} with the throwaway key. A cipher which cannot be re-initialized is dropped from the pool
+     * instead.
+     */
+    public static void release(Cipher cipher) {
+        String transformation = cipher.getAlgorithm();
+        try {
+            SecretKeySpec throwawayKey = new SecretKeySpec(THROWAWAY_KEY, "AES");
+            if (transformation.startsWith("AESWrap")) {
+                cipher.init(Cipher.UNWRAP_MODE, throwawayKey);
+            } else if (transformation.contains("/GCM/")) {
+                // Encryption, because GCM keeps a copy of its last encryption key until the next encryption. The nonce is random, because GCM refuses to
+                // encrypt twice in a row with the same key and nonce.
+                byte[] nonce = new byte[12];
+                ThreadLocalRandom.current().nextBytes(nonce);
+                cipher.init(Cipher.ENCRYPT_MODE, throwawayKey, new GCMParameterSpec(128, nonce));
+            } else {
+                cipher.init(Cipher.DECRYPT_MODE, throwawayKey, new IvParameterSpec(new byte[cipher.getBlockSize()]));
+            }
+        } catch (GeneralSecurityException | RuntimeException _) {
+            CIPHERS.get().remove(transformation, cipher);
+        }
+    }
+
+    /**
+     * Returns the pooled MAC of the calling thread. Pass it to {@link #release(Mac)} after use.
+     */
+    public static Mac mac(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (null == mac) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Re-initializes a MAC returned by {@link #mac(String)} with the throwaway key. A MAC which cannot be re-initialized is dropped from the pool instead.
+     */
+    public static void release(Mac mac) {
+        String algorithm = mac.getAlgorithm();
+        try {
+            mac.init(new SecretKeySpec(THROWAWAY_KEY, algorithm));
+        } catch (GeneralSecurityException | RuntimeException _) {
+            MACS.get().remove(algorithm, mac);
+        }
+    }
+
+    public static SecretKeyFactory secretKeyFactory(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, SecretKeyFactory> secretKeyFactories = SECRET_KEY_FACTORIES.get();
+        SecretKeyFactory secretKeyFactory = secretKeyFactories.get(algorithm);
+        if (null == secretKeyFactory) {
+            secretKeyFactory = SecretKeyFactory.getInstance(algorithm);
+            secretKeyFactories.put(algorithm, secretKeyFactory);
+        }
+        return secretKeyFactory;
+    }
+
+    public static MessageDigest messageDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> messageDigests = MESSAGE_DIGESTS.get();
+        MessageDigest messageDigest = messageDigests.get(algorithm);
+        if (null == messageDigest) {
+            messageDigest = MessageDigest.getInstance(algorithm);
+            messageDigests.put(algorithm, messageDigest);
+        } else {
+            messageDigest.reset();
+        }
+        return messageDigest;
+    }
+}
@@ -24,23 +24,40 @@ package org.esoul.surpass.gui;
 import java.awt.SystemTray;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.function.BooleanSupplier;
 
 import javax.swing.JOptionPane;
 
-public class ExitProgrammeHandler implements ActionListener {
+public class ExitProgrammeHandler extends WindowAdapter implements ActionListener {
 
     private BooleanSupplier unsavedDataExistSupplier = null;
 
+    private Runnable closeAction = null;
+
     private MainWindowComponents components = null;
 
-    public ExitProgrammeHandler(BooleanSupplier unsavedDataExistSupplier, MainWindowComponents components) {
+    public ExitProgrammeHandler(BooleanSupplier unsavedDataExistSupplier, Runnable closeAction, MainWindowComponents components) {
         this.unsavedDataExistSupplier = unsavedDataExistSupplier;
+        this.closeAction = closeAction;
         this.components = components;
     }
 
     @Override
     public void actionPerformed(ActionEvent actionEvent) {
+        exit();
+    }
+
+    /**
+     * Closing the main window asks the same as the exit menu items, so the session is closed however the programme is ended.
+     */
+    @Override
+    public void windowClosing(WindowEvent windowEvent) {
+        exit();
+    }
+
+    private void exit() {
         int selectedOption;
         if (unsavedDataExistSupplier.getAsBoolean()) {
             selectedOption = JOptionPane.showConfirmDialog(components.frame,
@@ -54,6 +71,7 @@ public class ExitProgrammeHandler implements ActionListener {
                 SystemTray.getSystemTray().remove(components.trayIcon);
             }
             components.frame.dispose();
+            closeAction.run();
         }
     }
 }
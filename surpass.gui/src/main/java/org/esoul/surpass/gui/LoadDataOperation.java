@@ -26,8 +26,6 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.function.Consumer;
 
-import javax.swing.table.AbstractTableModel;
-
 import org.esoul.surpass.app.InvalidPasswordException;
 import org.esoul.surpass.app.ServiceUnavailableException;
 import org.esoul.surpass.app.Session;
@@ -35,14 +33,12 @@ import org.esoul.surpass.gui.dialog.MessageDialog;
 
 class LoadDataOperation extends BaseDataOperationWorker {
 
-    private AbstractTableModel tableModel;
     private Session session;
     private char[] password;
     private String serviceId;
 
     LoadDataOperation(Session session, MainWindowComponents components, char[] password, String serviceId) {
         super(components.frame, components.operationProgressBar);
-        this.tableModel = components.tableModel;
         this.session = session;
         this.password = password;
         this.serviceId = serviceId;
@@ -62,9 +58,4 @@ class LoadDataOperation extends BaseDataOperationWorker {
         return _ -> {
         };
     }
-
-    @Override
-    protected void doneSuccess() {
-        tableModel.fireTableDataChanged();
-    }
 }
@@ -41,19 +41,20 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -81,6 +82,7 @@ import org.esoul.surpass.app.SecretQuery;
 import org.esoul.surpass.app.ServiceUnavailableException;
 import org.esoul.surpass.app.Session;
 import org.esoul.surpass.app.SessionFactory;
+import org.esoul.surpass.core.jca.CryptoPrimitives;
 import org.esoul.surpass.gui.addupdatesec.AddUpdateSecretWindow;
 import org.esoul.surpass.gui.dialog.Dialogs;
 import org.esoul.surpass.gui.dialog.MessageDialog;
@@ -154,6 +156,9 @@ public final class MainWindow {
     private void createFrame() {
         components.frame = new JFrame("Surpass");
         components.frame.setLayout(new BoxLayout(components.frame.getContentPane(), BoxLayout.PAGE_AXIS));
+        // The handler disposes the frame only if exiting is confirmed.
+        components.frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        components.frame.addWindowListener(new ExitProgrammeHandler(session::unsavedDataExists, session::close, components));
     }
 
     private void createMenuBar() {
@@ -176,7 +181,7 @@ public final class MainWindow {
         changeMasterPassItem.addActionListener(this::changeMasterPass);
 
         JMenuItem exitMenuItem = new JMenuItem(Labels.MENU_ITEM_EXIT, KeyEvent.VK_X);
-        exitMenuItem.addActionListener(new ExitProgrammeHandler(session::unsavedDataExists, components));
+        exitMenuItem.addActionListener(new ExitProgrammeHandler(session::unsavedDataExists, session::close, components));
 
         JMenu programMenu = new JMenu("Programme");
         programMenu.setMnemonic(KeyEvent.VK_P);
@@ -224,7 +229,8 @@ public final class MainWindow {
         try {
             session.checkDataLoaded();
             SecretQuery secretQuery = session.createQuery();
-            AddUpdateSecretWindow.createAndShowAdd(components.frame, this::writeSecret, session::generateSecret, secretQuery::getUniqueIdentifiers);
+            AddUpdateSecretWindow.createAndShowAdd(components.frame, this::writeSecret, session::generateSecret, secretQuery::getUniqueIdentifiers,
+                    secretQuery::completeIdentifier, identifier -> secretQuery.findRowsByIdentifier(identifier).length);
         } catch (ExistingDataNotLoadedException e) {
             MessageDialog.GENERIC_ERROR.show(components.frame, "Local secrets exist. Load them before adding new.");
         }
@@ -232,18 +238,32 @@ public final class MainWindow {
 
     private void writeSecret(char[] secret, char[] identifier, char[] note) throws Exception {
         session.write(secret, identifier, note);
-        components.tableModel.fireTableDataChanged();
     }
 
-    private void createTable() {
-        components.tableModel = new SimpleTableModel(session.getSecretTable());
-        components.tableModel.addTableModelListener(_ -> {
-            String secrets = components.tableModel.getRowCount() + "/" + session.getSecretTable().getMaxRow() + " secrets";
-            if (session.unsavedDataExists()) {
-                secrets += " *";
+    /**
+     * Shows only the rows which contain the given text, exactly or approximately. The rows are matched with the substring index of the session instead of a
+     * regular expression over the decoded cells.
+     */
+    private void filterTable(TableRowSorter<AbstractTableModel> tableRowSorter, String text, boolean fuzzy) {
+        if (text.isEmpty()) {
+            tableRowSorter.setRowFilter(null);
+            return;
+        }
+        SecretQuery secretQuery = session.createQuery();
+        IntPredicate matcher = fuzzy ? secretQuery.approximatelyContaining(text) : secretQuery.containing(text);
+        tableRowSorter.setRowFilter(new RowFilter<>() {
+            @Override
+            public boolean include(Entry<? extends AbstractTableModel, ? extends Integer> entry) {
+                return matcher.test(entry.getIdentifier());
             }
-            components.secretCountLabel.setText(secrets);
         });
+    }
+
+    private void createTable() {
+        SimpleTableModel tableModel = new SimpleTableModel(session.getSecretTable());
+        session.addRowChangeListener(tableModel::rowsChanged);
+        components.tableModel = tableModel;
+        components.tableModel.addTableModelListener(_ -> components.updateSecretCount(session.getSecretTable().getMaxRow(), session.unsavedDataExists()));
         TableRowSorter<AbstractTableModel> tableRowSorter = new TableRowSorter<>(components.tableModel);
 
         JLabel filterLabel = new JLabel("Filter:");
@@ -257,6 +277,9 @@ public final class MainWindow {
 
         JTextField filterTextField = new JTextField();
         filterTextField.setMaximumSize(new Dimension(Integer.MAX_VALUE, 26));
+        JCheckBox fuzzyCheckBox = new JCheckBox("Fuzzy");
+        fuzzyCheckBox.setToolTipText("Also show secrets which match with typos");
+        fuzzyCheckBox.addActionListener(_ -> filterTable(tableRowSorter, filterTextField.getText(), fuzzyCheckBox.isSelected()));
         filterTextField.addKeyListener(new KeyListener() {
             @Override
             public void keyTyped(KeyEvent e) {
@@ -264,7 +287,7 @@ public final class MainWindow {
 
             @Override
             public void keyReleased(KeyEvent e) {
-                tableRowSorter.setRowFilter(RowFilter.regexFilter("(?iu:.*" + filterTextField.getText() + ".*)"));
+                filterTable(tableRowSorter, filterTextField.getText(), fuzzyCheckBox.isSelected());
             }
 
             @Override
@@ -273,6 +296,8 @@ public final class MainWindow {
         });
         filterBox.add(filterTextField);
 
+        filterBox.add(Layout.createHSpacer());
+        filterBox.add(fuzzyCheckBox);
         filterBox.add(Layout.createHSpacer());
 
         JButton clearButton = Layout.createFixedSizeButton("Clear", 85);
@@ -422,7 +447,7 @@ public final class MainWindow {
 
     private byte[] calculateHash(byte[] input) {
         try {
-            return MessageDigest.getInstance("SHA-256").digest(input);
+            return CryptoPrimitives.messageDigest("SHA-256").digest(input);
         } catch (NoSuchAlgorithmException e) {
             return new byte[0];
         }
@@ -435,7 +460,7 @@ public final class MainWindow {
         byte[] identifier = session.getSecretTable().readIdentifier(row);
         byte[] note = session.getSecretTable().readNote(row);
         AddUpdateSecretWindow.createAndShowUpdate(components.frame, this::writeSecret, session::generateSecret, secretQuery::getUniqueIdentifiers,
-                new String(identifier, StandardCharsets.UTF_8), new String(note, StandardCharsets.UTF_8));
+                secretQuery::completeIdentifier, new String(identifier, StandardCharsets.UTF_8), new String(note, StandardCharsets.UTF_8));
     }
 
     private void removeRow(ActionEvent event) {
@@ -444,7 +469,6 @@ public final class MainWindow {
         if (JOptionPane.YES_OPTION == selectedOption) {
             int row = getSelected();
             session.remove(row);
-            components.tableModel.fireTableRowsDeleted(row, row);
             components.setEnabledTableButtons(false);
         }
     }
@@ -470,7 +494,7 @@ public final class MainWindow {
                 storeMenuItem.addActionListener(this::storeData);
 
                 MenuItem exitMenuItem = new MenuItem(Labels.MENU_ITEM_EXIT);
-                exitMenuItem.addActionListener(new ExitProgrammeHandler(session::unsavedDataExists, components));
+                exitMenuItem.addActionListener(new ExitProgrammeHandler(session::unsavedDataExists, session::close, components));
 
                 PopupMenu popupMenu = new PopupMenu("Surpass");
                 popupMenu.add(loadMenuItem);
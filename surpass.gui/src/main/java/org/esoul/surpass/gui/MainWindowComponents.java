@@ -70,4 +70,12 @@ final class MainWindowComponents {
         editRowButton.setEnabled(enabled);
         removeRowButton.setEnabled(enabled);
     }
+
+    void updateSecretCount(int maxRow, boolean unsavedDataExists) {
+        String secrets = tableModel.getRowCount() + "/" + maxRow + " secrets";
+        if (unsavedDataExists) {
+            secrets += " *";
+        }
+        secretCountLabel.setText(secrets);
+    }
 }
@@ -28,8 +28,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.function.Consumer;
 
-import javax.swing.table.AbstractTableModel;
-
 import org.esoul.surpass.app.ExistingDataNotLoadedException;
 import org.esoul.surpass.app.InvalidPasswordException;
 import org.esoul.surpass.app.Session;
@@ -37,14 +35,14 @@ import org.esoul.surpass.gui.dialog.MessageDialog;
 
 class StoreDataOperation extends BaseDataOperationWorker {
 
-    private AbstractTableModel tableModel;
+    private MainWindowComponents components;
     private Session session = null;
     private char[] password = null;
     private Collection<String> selectedServicesIds;
 
     StoreDataOperation(Session session, MainWindowComponents components, char[] password, Collection<String> selectedServicesIds) {
         super(components.frame, components.operationProgressBar);
-        this.tableModel = components.tableModel;
+        this.components = components;
         this.session = session;
         this.password = password;
         this.selectedServicesIds = new ArrayList<>(selectedServicesIds);
@@ -71,6 +69,6 @@ class StoreDataOperation extends BaseDataOperationWorker {
 
     @Override
     protected void doneSuccess() {
-        tableModel.fireTableDataChanged();
+        components.updateSecretCount(session.getSecretTable().getMaxRow(), session.unsavedDataExists());
     }
 }
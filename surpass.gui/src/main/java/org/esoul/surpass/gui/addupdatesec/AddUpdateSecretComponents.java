@@ -23,6 +23,7 @@ package org.esoul.surpass.gui.addupdatesec;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JPasswordField;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
@@ -33,6 +34,8 @@ final class AddUpdateSecretComponents {
 
     JTextField identifierTextField = null;
 
+    JLabel identifierUsageLabel = null;
+
     JPasswordField secretPasswordField = null;
 
     JTextArea noteTextArea = null;
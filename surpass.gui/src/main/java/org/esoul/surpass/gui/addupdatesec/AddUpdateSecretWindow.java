@@ -24,19 +24,26 @@ package org.esoul.surpass.gui.addupdatesec;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPasswordField;
+import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import org.esoul.surpass.gui.Layout;
 import org.esoul.surpass.gui.dialog.Dialogs;
@@ -46,11 +53,15 @@ import org.esoul.surpass.secgen.api.CharClass;
 
 public class AddUpdateSecretWindow {
 
+    private static final int MAX_SHOWN_COMPLETIONS = 8;
+
     public static void createAndShowAdd(JFrame parentFrame, AddUpdateSecretListener listener, BiConsumer<char[], Collection<CharClass>> secretGenerator,
-            Supplier<Collection<String>> uniqueIdsSupplier) {
+            Supplier<Collection<String>> uniqueIdsSupplier, BiFunction<String, Integer, List<String>> identifierCompleter,
+            ToIntFunction<String> identifierUsageCounter) {
         AddUpdateSecretComponents components = new AddUpdateSecretComponents();
         components.frame = Layout.createDialogFrame(parentFrame, "Add Secret");
-        setupIdentifierLine(components, uniqueIdsSupplier);
+        setupIdentifierLine(components, uniqueIdsSupplier, identifierCompleter);
+        setupIdentifierUsageLine(components, identifierUsageCounter);
         setupSecretLine(components, secretGenerator);
         setupNoteLine(components);
         setupCommandPanel(components, listener, "Add");
@@ -58,10 +69,10 @@ public class AddUpdateSecretWindow {
     }
 
     public static void createAndShowUpdate(JFrame parentFrame, AddUpdateSecretListener listener, BiConsumer<char[], Collection<CharClass>> secretGenerator,
-            Supplier<Collection<String>> uniqueIdsSupplier, String identifier, String note) {
+            Supplier<Collection<String>> uniqueIdsSupplier, BiFunction<String, Integer, List<String>> identifierCompleter, String identifier, String note) {
         AddUpdateSecretComponents components = new AddUpdateSecretComponents();
         components.frame = Layout.createDialogFrame(parentFrame, "Update Secret");
-        setupIdentifierLine(components, uniqueIdsSupplier);
+        setupIdentifierLine(components, uniqueIdsSupplier, identifierCompleter);
         components.identifierTextField.setText(identifier);
         setupSecretLine(components, secretGenerator);
         setupNoteLine(components);
@@ -70,7 +81,8 @@ public class AddUpdateSecretWindow {
         Dialogs.show(parentFrame, components.frame);
     }
 
-    private static void setupIdentifierLine(AddUpdateSecretComponents components, Supplier<Collection<String>> uniqueIdsSupplier) {
+    private static void setupIdentifierLine(AddUpdateSecretComponents components, Supplier<Collection<String>> uniqueIdsSupplier,
+            BiFunction<String, Integer, List<String>> identifierCompleter) {
         JLabel identifierLabel = new JLabel("Identifier: ");
         identifierLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         components.frame.add(identifierLabel);
@@ -78,9 +90,11 @@ public class AddUpdateSecretWindow {
         components.identifierTextField = new JTextField(30);
         components.identifierTextField.setPreferredSize(new Dimension(400, 26));
         components.identifierTextField.setMaximumSize(new Dimension(Integer.MAX_VALUE, 26));
+        setupIdentifierCompletion(components, identifierCompleter);
 
         JButton selectIdButton = Layout.createFixedSizeButton("Select existing", 125);
-        selectIdButton.setEnabled(!uniqueIdsSupplier.get().isEmpty());
+        // Any identifier completes the empty prefix, so this does not need the whole list.
+        selectIdButton.setEnabled(!identifierCompleter.apply("", 1).isEmpty());
         selectIdButton.addActionListener(_ -> {
             String selectedIdentifier = Dialogs.showComboSelectionDialog(components.frame, "Existing identifiers", uniqueIdsSupplier.get());
             components.identifierTextField.setText(selectedIdentifier);
@@ -95,6 +109,83 @@ public class AddUpdateSecretWindow {
         components.frame.add(Layout.createVSpacer());
     }
 
+    /**
+     * Shows the most used existing identifiers which start with the typed text in a popup below the identifier field. The completions come from a prefix trie,
+     * so they are looked up on every change without reading the secrets.
+     */
+    private static void setupIdentifierCompletion(AddUpdateSecretComponents components, BiFunction<String, Integer, List<String>> identifierCompleter) {
+        JPopupMenu completionPopup = new JPopupMenu();
+        completionPopup.setFocusable(false);
+        components.identifierTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                showCompletions(components, completionPopup, identifierCompleter);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                showCompletions(components, completionPopup, identifierCompleter);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    private static void showCompletions(AddUpdateSecretComponents components, JPopupMenu completionPopup,
+            BiFunction<String, Integer, List<String>> identifierCompleter) {
+        completionPopup.setVisible(false);
+        completionPopup.removeAll();
+        String prefix = components.identifierTextField.getText().trim();
+        // Text set by the dialog itself, e.g. when updating a secret, is not completed.
+        if (prefix.isEmpty() || !components.identifierTextField.hasFocus()) {
+            return;
+        }
+        for (String completion : identifierCompleter.apply(prefix, MAX_SHOWN_COMPLETIONS)) {
+            if (!completion.equals(prefix)) {
+                JMenuItem completionItem = new JMenuItem(completion);
+                completionItem.addActionListener(_ -> components.identifierTextField.setText(completion));
+                completionPopup.add(completionItem);
+            }
+        }
+        if (0 < completionPopup.getComponentCount()) {
+            completionPopup.show(components.identifierTextField, 0, components.identifierTextField.getHeight());
+        }
+    }
+
+    /**
+     * Shows how many secrets already use the typed identifier. The count is looked up in the identifier index on every change, so it does not depend on the
+     * number of secrets.
+     */
+    private static void setupIdentifierUsageLine(AddUpdateSecretComponents components, ToIntFunction<String> identifierUsageCounter) {
+        components.identifierUsageLabel = new JLabel(" ");
+        components.identifierUsageLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        components.identifierTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateIdentifierUsage(components, identifierUsageCounter);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateIdentifierUsage(components, identifierUsageCounter);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        components.frame.add(components.identifierUsageLabel);
+        components.frame.add(Layout.createVSpacer());
+    }
+
+    private static void updateIdentifierUsage(AddUpdateSecretComponents components, ToIntFunction<String> identifierUsageCounter) {
+        String identifier = components.identifierTextField.getText().trim();
+        int usage = identifier.isEmpty() ? 0 : identifierUsageCounter.applyAsInt(identifier);
+        components.identifierUsageLabel.setText(0 == usage ? " " : "Already used by " + usage + (1 == usage ? " secret." : " secrets."));
+    }
+
     private static void setupSecretLine(AddUpdateSecretComponents components, BiConsumer<char[], Collection<CharClass>> secretGenerator) {
         JLabel secretLabel = new JLabel("Secret: ");
         secretLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -21,8 +21,14 @@
 */
 package org.esoul.surpass.gui.table;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
+import org.esoul.surpass.app.RowChangeEvent;
 import org.esoul.surpass.table.api.SecretTable;
 
 public class SimpleTableModel extends AbstractTableModel {
@@ -35,21 +41,34 @@ public class SimpleTableModel extends AbstractTableModel {
 
     public static final String[] COLUMN_NAMES = new String[] { "Identifier", "Note" };
 
+    private static final int INITIAL_BUFFER_LEN = 128;
+
     private SecretTable secretTable = null;
 
+    /** Reused for every cell. The model is only accessed from the event dispatch thread. */
+    private transient ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_LEN);
+
     public SimpleTableModel(SecretTable secretTable) {
         this.secretTable = secretTable;
     }
 
+    /**
+     * Decodes the cell straight from the reused buffer, the only allocation is the resulting {@link String}.
+     */
     @Override
     public Object getValueAt(int row, int col) {
-        if (IDENTIFIER_COLUMN_INDEX == col) {
-            return new String(secretTable.readIdentifier(row));
-        } else if (NOTE_COLUMN_INDEX == col) {
-            return new String(secretTable.readNote(row));
-        } else {
+        if (IDENTIFIER_COLUMN_INDEX != col && NOTE_COLUMN_INDEX != col) {
             throw new IllegalStateException();
         }
+        buffer.clear();
+        try {
+            int length = IDENTIFIER_COLUMN_INDEX == col ? secretTable.readIdentifierInto(row, buffer) : secretTable.readNoteInto(row, buffer);
+            return new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+        } catch (BufferOverflowException _) {
+            int length = IDENTIFIER_COLUMN_INDEX == col ? secretTable.getIdentifierLength(row) : secretTable.getNoteLength(row);
+            buffer = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), length));
+            return getValueAt(row, col);
+        }
     }
 
     @Override
@@ -67,6 +86,23 @@ public class SimpleTableModel extends AbstractTableModel {
         return COLUMN_NAMES[column];
     }
 
+    /**
+     * Fires the smallest table model event which covers the change, so that only the affected rows are re-rendered. Changes made outside the event dispatch
+     * thread, e.g. loading in a worker, are fired later on it.
+     */
+    public void rowsChanged(RowChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> rowsChanged(event));
+            return;
+        }
+        switch (event.type()) {
+            case INSERTED -> fireTableRowsInserted(event.firstRow(), event.lastRow());
+            case UPDATED -> fireTableRowsUpdated(event.firstRow(), event.lastRow());
+            case REMOVED -> fireTableRowsDeleted(event.firstRow(), event.lastRow());
+            case RELOADED -> fireTableDataChanged();
+        }
+    }
+
     @Override
     public boolean isCellEditable(int row, int column) {
         return NOTE_COLUMN_INDEX == column;